@@ -0,0 +1,93 @@
+package de.sybig.uniprotFetcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the steps of a request on generated entries of different sizes:
+ * parsing the RDF into the isoforms, aligning the isoforms, serially and on
+ * the pool of the aligner, and rendering the SVG of the alignment. The
+ * caches of {@link Isoforms} are bypassed, each invocation does the whole
+ * step.
+ *
+ * Run with
+ * <code>mvn -Pbenchmark test-compile exec:exec -Dbenchmark=EntryBenchmark</code>,
+ * the throughput is reported with the allocation rate of the GC profiler.
+ * Select sizes with <code>-Dbenchmark.args="-prof gc -p isoforms=50 -p length=35000"</code>.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntryBenchmark {
+
+    private static final int WIDTH = 1000;
+
+    @Param({"1", "10", "50"})
+    public int isoforms;
+
+    @Param({"300", "3000", "35000"})
+    public int length;
+
+    private byte[] rdf;
+    private List<Isoform> entryIsoforms;
+    private List<AlignedSequence> alignment;
+    private String domain;
+    private final Aligner serialAligner = new Aligner(1);
+    private final Aligner parallelAligner = new Aligner(Runtime.getRuntime().availableProcessors());
+    private final OutputStream sink = new NullOutputStream();
+
+    @Setup
+    public void setUp() throws Exception {
+        rdf = RdfFixture.createEntry("F00001", isoforms, length, 42).getBytes(StandardCharsets.UTF_8);
+        entryIsoforms = parse();
+        alignment = serialAligner.align(entryIsoforms);
+        String canonical = entryIsoforms.get(0).getSequence();
+        domain = canonical.substring(length / 3, length / 3 + 10);
+    }
+
+    @Benchmark
+    public List<Isoform> parse() throws Exception {
+        UniProtEntry entry = new RdfEntryReader().read(new ByteArrayInputStream(rdf));
+        List<Isoform> result = new ArrayList<>(entry.getModifiedSequences().size() + 1);
+        result.add(entry.getCanonicalSequence());
+        result.addAll(entry.getModifiedSequences());
+        return result;
+    }
+
+    @Benchmark
+    public List<AlignedSequence> alignSerially() throws IOException {
+        return serialAligner.align(entryIsoforms);
+    }
+
+    @Benchmark
+    public List<AlignedSequence> alignParallel() throws IOException {
+        return parallelAligner.align(entryIsoforms);
+    }
+
+    @Benchmark
+    public void svg() throws IOException {
+        new SvgWriter(sink).write(alignment, domain, "#FF0000", WIDTH);
+    }
+}
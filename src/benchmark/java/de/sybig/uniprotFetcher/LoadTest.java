@@ -0,0 +1,315 @@
+package de.sybig.uniprotFetcher;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import io.dropwizard.server.DefaultServerFactory;
+import io.dropwizard.server.ServerFactory;
+import io.dropwizard.server.SimpleServerFactory;
+import io.dropwizard.testing.ConfigOverride;
+import io.dropwizard.testing.DropwizardTestSupport;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts the application against a {@link StubUniProt} with an empty data
+ * directory, sends requests to all endpoints from several threads and
+ * reports the throughput and the latency percentiles of each endpoint.
+ *
+ * Run with
+ * <code>mvn -Pbenchmark test-compile exec:exec@load-test -Dloadtest.args="--entries 5000 --threads 32"</code>,
+ * <code>--help</code> lists the options. The configuration file is used
+ * with the data directory, the quality index, the UniProt URL and the ports
+ * replaced, so it has to use the default server with one application and
+ * one admin connector. Loggers more verbose than warnings are lowered to
+ * warnings, the request log is kept.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class LoadTest {
+
+    private static final double HOT_SET = 0.1;
+
+    private final Namespace options;
+    private final StubUniProt stub;
+    private final String baseUrl;
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final int totalWeight;
+    private volatile long measureStart;
+
+    public static void main(String[] args) throws Exception {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("LoadTest")
+                .defaultHelp(true)
+                .description("Load test of the application against a local stub of UniProt");
+        parser.addArgument("--config").setDefault("config.yaml")
+                .help("the configuration of the application");
+        parser.addArgument("--entries").type(Integer.class).setDefault(1000)
+                .help("the number of entries of the stub");
+        parser.addArgument("--obsolete").type(Integer.class).setDefault(100)
+                .help("the number of obsolete entries of the stub, replaced in chains of up to three entries");
+        parser.addArgument("--isoforms").type(Integer.class).setDefault(10)
+                .help("the number of isoforms of each entry");
+        parser.addArgument("--length").type(Integer.class).setDefault(1000)
+                .help("the length of the canonical sequences");
+        parser.addArgument("--seed").type(Long.class).setDefault(42L)
+                .help("the seed of the generated entries, the same as for a generated dump");
+        parser.addArgument("--upstream-latency").type(Long.class).setDefault(200L)
+                .help("the delay of each response of the stub in milliseconds");
+        parser.addArgument("--hot").type(Double.class).setDefault(0.8)
+                .help("the share of the requests for the first tenth of the entries");
+        parser.addArgument("--threads").type(Integer.class).setDefault(16)
+                .help("the number of threads sending requests");
+        parser.addArgument("--warmup").type(Integer.class).setDefault(10)
+                .help("the seconds of requests before the measurement");
+        parser.addArgument("--duration").type(Integer.class).setDefault(60)
+                .help("the seconds of requests measured");
+        Namespace options;
+        try {
+            options = parser.parseArgs(args);
+        } catch (ArgumentParserException ex) {
+            parser.handleError(ex);
+            System.exit(1);
+            return;
+        }
+        // one kept alive connection per thread
+        System.setProperty("http.maxConnections", String.valueOf(options.getInt("threads")));
+
+        Path dataDir = Files.createTempDirectory("load-test");
+        try (StubUniProt stub = new StubUniProt(options.getInt("entries"), options.getInt("obsolete"),
+                options.getInt("isoforms"), options.getInt("length"), options.getLong("seed"),
+                options.getLong("upstream_latency"))) {
+            DropwizardTestSupport<UniProtConfiguration> application = new DropwizardTestSupport<>(
+                    UniProtApplication.class, options.getString("config"),
+                    ConfigOverride.config("dataDir", dataDir.resolve("data").toString()),
+                    ConfigOverride.config("qualityIndexFile", dataDir.resolve("data.quality").toString()),
+                    ConfigOverride.config("uniprotUrl", stub.getUrl()),
+                    ConfigOverride.config("server.applicationConnectors[0].port", "0"),
+                    ConfigOverride.config("server.adminConnectors[0].port", "0"));
+            application.before();
+            quietLoggers();
+            try {
+                String baseUrl = "http://localhost:" + application.getLocalPort()
+                        + getContextPath(application.getConfiguration().getServerFactory());
+                new LoadTest(options, stub, baseUrl).run();
+            } finally {
+                application.after();
+            }
+        } finally {
+            FileUtils.deleteDirectory(dataDir.toFile());
+        }
+    }
+
+    LoadTest(Namespace options, StubUniProt stub, String baseUrl) {
+        this.options = options;
+        this.stub = stub;
+        this.baseUrl = baseUrl;
+        endpoints.add(new Endpoint("isoforms", 25, random -> "isoforms/" + randomId(random)));
+        endpoints.add(new Endpoint("alignment", 20, random -> "isoforms/alignmentPos/" + randomId(random)));
+        endpoints.add(new Endpoint("alignment compact", 10,
+                random -> "isoforms/alignmentPos/" + randomId(random) + "?format=compact"));
+        endpoints.add(new Endpoint("svg", 15, random -> "isoforms/svg/" + randomId(random)));
+        endpoints.add(new Endpoint("svg with sequence", 10, random -> {
+            int number = randomNumber(random);
+            String sequence = stub.getCanonicalSequence(number);
+            int start = random.nextInt(sequence.length() - 10);
+            return "isoforms/svg/" + RdfFixture.getAccession(number) + "/" + sequence.substring(start, start + 10)
+                    + "?color=FF0000";
+        }));
+        endpoints.add(new Endpoint("best", 10,
+                random -> "best/" + randomId(random) + "," + randomId(random) + "," + randomId(random)));
+        endpoints.add(new Endpoint("batch", 10, random -> {
+            StringBuilder ids = new StringBuilder("isoforms/batch?ids=").append(randomId(random));
+            for (int i = 1; i < 5; i++) {
+                ids.append(',').append(randomId(random));
+            }
+            return ids.toString();
+        }));
+        int weight = 0;
+        for (Endpoint endpoint : endpoints) {
+            weight += endpoint.weight;
+        }
+        totalWeight = weight;
+    }
+
+    void run() throws InterruptedException {
+        int threads = options.getInt("threads");
+        long warmup = TimeUnit.SECONDS.toNanos(options.getInt("warmup"));
+        long duration = TimeUnit.SECONDS.toNanos(options.getInt("duration"));
+        measureStart = System.nanoTime() + warmup;
+        long end = measureStart + duration;
+        System.out.printf("%d threads against %s, %d s warmup, %d s measured%n",
+                threads, baseUrl, options.getInt("warmup"), options.getInt("duration"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            long seed = options.getLong("seed") + i;
+            executor.execute(() -> {
+                Random random = new Random(seed);
+                while (System.nanoTime() < end && !Thread.currentThread().isInterrupted()) {
+                    request(pickEndpoint(random), random);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(warmup + duration + TimeUnit.MINUTES.toNanos(1), TimeUnit.NANOSECONDS);
+        executor.shutdownNow();
+        report(duration);
+    }
+
+    private void request(Endpoint endpoint, Random random) {
+        String path = endpoint.paths.create(random);
+        long start = System.nanoTime();
+        boolean success;
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            connection.setConnectTimeout(10000);
+            connection.setReadTimeout(60000);
+            int status = connection.getResponseCode();
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                drain(in);
+            }
+            success = status < 400;
+        } catch (IOException ex) {
+            success = false;
+        }
+        long time = System.nanoTime() - start;
+        if (start >= measureStart) {
+            endpoint.timer.update(time, TimeUnit.NANOSECONDS);
+            if (!success) {
+                endpoint.errors.incrementAndGet();
+            }
+        }
+    }
+
+    private void report(long duration) {
+        double seconds = duration / 1e9;
+        System.out.printf("%n%-18s %9s %7s %9s %9s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "mean ms", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        long total = 0;
+        long errors = 0;
+        for (Endpoint endpoint : endpoints) {
+            Snapshot snapshot = endpoint.timer.getSnapshot();
+            long count = endpoint.timer.getCount();
+            total += count;
+            errors += endpoint.errors.get();
+            System.out.printf("%-18s %9d %7d %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                    endpoint.name, count, endpoint.errors.get(), count / seconds,
+                    snapshot.getMean() / 1e6, snapshot.getMedian() / 1e6, snapshot.getValue(0.9) / 1e6,
+                    snapshot.get99thPercentile() / 1e6, snapshot.get999thPercentile() / 1e6, snapshot.getMax() / 1e6);
+        }
+        System.out.printf("%-18s %9d %7d %9.1f%n", "total", total, errors, total / seconds);
+        System.out.printf("%d requests to the stub of UniProt%n", stub.getRequests());
+    }
+
+    private Endpoint pickEndpoint(Random random) {
+        int value = random.nextInt(totalWeight);
+        for (Endpoint endpoint : endpoints) {
+            value -= endpoint.weight;
+            if (value < 0) {
+                return endpoint;
+            }
+        }
+        return endpoints.get(endpoints.size() - 1);
+    }
+
+    /**
+     * Picks an entry, one in ten obsolete if there are obsolete entries.
+     */
+    private String randomId(Random random) {
+        int obsolete = Math.min(options.getInt("obsolete"), options.getInt("entries"));
+        if (obsolete > 0 && random.nextInt(10) == 0) {
+            return StubUniProt.getObsoleteAccession(1 + random.nextInt(obsolete));
+        }
+        return RdfFixture.getAccession(randomNumber(random));
+    }
+
+    /**
+     * Picks the number of an entry, with the share given by
+     * <code>--hot</code> from the first tenth of the entries.
+     */
+    private int randomNumber(Random random) {
+        int entries = options.getInt("entries");
+        int hot = Math.max(1, (int) (entries * HOT_SET));
+        if (random.nextDouble() < options.getDouble("hot")) {
+            return 1 + random.nextInt(hot);
+        }
+        return 1 + random.nextInt(entries);
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        byte[] buffer = new byte[8192];
+        while (in.read(buffer) >= 0) {
+            // the content is not checked, only the time to receive it
+        }
+    }
+
+    /**
+     * Lowers the loggers of the configuration to warnings, like
+     * <code>de.sybig: DEBUG</code> of the development configuration, which
+     * can't be replaced by an override.
+     */
+    private static void quietLoggers() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        for (Logger logger : context.getLoggerList()) {
+            if (logger.getLevel() != null && !logger.getLevel().isGreaterOrEqual(Level.WARN)) {
+                logger.setLevel(Level.WARN);
+            }
+        }
+    }
+
+    private static String getContextPath(ServerFactory factory) {
+        String path = "/";
+        if (factory instanceof DefaultServerFactory) {
+            path = ((DefaultServerFactory) factory).getApplicationContextPath();
+        } else if (factory instanceof SimpleServerFactory) {
+            path = ((SimpleServerFactory) factory).getApplicationContextPath();
+        }
+        return path.endsWith("/") ? path : path + "/";
+    }
+
+    /**
+     * Creates the path and query of a request.
+     */
+    private interface PathFactory {
+
+        String create(Random random);
+    }
+
+    private static class Endpoint {
+
+        private final String name;
+        private final int weight;
+        private final PathFactory paths;
+        private final Timer timer = new Timer(new UniformReservoir(1 << 16));
+        private final AtomicLong errors = new AtomicLong();
+
+        Endpoint(String name, int weight, PathFactory paths) {
+            this.name = name;
+            this.weight = weight;
+            this.paths = paths;
+        }
+    }
+}
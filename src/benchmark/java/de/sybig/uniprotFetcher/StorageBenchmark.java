@@ -0,0 +1,81 @@
+package de.sybig.uniprotFetcher;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares plain and gzip compressed storage of the RDF files: the size on
+ * disk is printed when the store is set up, the benchmark measures opening
+ * and parsing the stored file.
+ *
+ * Run with
+ * <code>mvn -Pbenchmark test-compile exec:exec -Dbenchmark=StorageBenchmark</code>,
+ * add <code>-Dbenchmark.args="-p file=/path/to/P12345.rdf"</code> to use a
+ * real entry instead of the small test files.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageBenchmark {
+
+    private static final String ID = "ENTRY";
+
+    @Param({"testData/test2sameSubs.rdf"})
+    public String file;
+
+    @Param({"0", "1", "6", "9"})
+    public int compressionLevel;
+
+    private Path dataDir;
+    private RdfStore store;
+
+    @Setup
+    public void setUp() throws Exception {
+        dataDir = Files.createTempDirectory("storage-benchmark");
+        UniProtConfiguration config = new UniProtConfiguration();
+        config.setDataDir(dataDir.toString());
+        config.setCompressionLevel(compressionLevel);
+        store = new RdfStore(config);
+        try (InputStream in = Files.newInputStream(Paths.get(file))) {
+            store.store(ID, in);
+        }
+        long plain = Files.size(Paths.get(file));
+        long stored = Files.size(store.getLocalFile(ID));
+        System.out.printf("%nlevel %d: %d bytes stored for %d bytes (%.1f%%)%n",
+                compressionLevel, stored, plain, 100.0 * stored / plain);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        store.stop();
+        FileUtils.deleteDirectory(dataDir.toFile());
+    }
+
+    @Benchmark
+    public UniProtEntry parse() throws Exception {
+        try (InputStream in = store.openRDF(ID)) {
+            return new RdfEntryReader().read(in);
+        }
+    }
+}
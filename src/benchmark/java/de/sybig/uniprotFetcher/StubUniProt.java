@@ -0,0 +1,151 @@
+package de.sybig.uniprotFetcher;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for <code>https://www.uniprot.org/uniprot/</code>,
+ * serving the entries of {@link RdfFixture} as <code>ID.rdf</code>.
+ *
+ * The entries <code>F00001</code> to the number of entries are generated
+ * like the entries of {@link RdfFixture#createDump}, so a node filled by
+ * importing such a dump serves the same data. The obsolete entries
+ * <code>O00001</code> to the number of obsolete entries are replaced by the
+ * next obsolete entry or, for every third one, by the entry with the same
+ * number, so they form chains of up to three replacements.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class StubUniProt implements Closeable {
+
+    private static final String SUFFIX = ".rdf";
+
+    private final int entries;
+    private final int obsoleteEntries;
+    private final int isoforms;
+    private final int length;
+    private final long seed;
+    private final long latencyMillis;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, byte[]> generated = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Starts the stub on a free port of the loopback interface.
+     *
+     * @param entries The number of entries.
+     * @param obsoleteEntries The number of obsolete entries.
+     * @param isoforms The number of isoforms of each entry.
+     * @param length The length of the canonical sequences.
+     * @param seed The seed of the generated entries.
+     * @param latencyMillis The time each response is delayed, like the
+     * round trip to UniProt.
+     * @throws IOException If the server could not be started.
+     */
+    public StubUniProt(int entries, int obsoleteEntries, int isoforms, int length, long seed, long latencyMillis) throws IOException {
+        this.entries = entries;
+        this.obsoleteEntries = Math.min(obsoleteEntries, entries);
+        this.isoforms = isoforms;
+        this.length = length;
+        this.seed = seed;
+        this.latencyMillis = latencyMillis;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * The URL to configure as <code>uniprotUrl</code>.
+     *
+     * @return The URL, ending with a slash.
+     */
+    public String getUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public static String getObsoleteAccession(int number) {
+        return String.format("O%05d", number);
+    }
+
+    /**
+     * Gets the canonical sequence of an entry.
+     *
+     * @param number The number of the entry.
+     * @return The sequence.
+     */
+    public String getCanonicalSequence(int number) {
+        return RdfFixture.getCanonicalSequence(length, seed + number);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            if (latencyMillis > 0) {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            }
+            String path = exchange.getRequestURI().getPath();
+            String id = path.substring(path.lastIndexOf('/') + 1);
+            byte[] body = id.endsWith(SUFFIX) ? getEntry(id.substring(0, id.length() - SUFFIX.length())) : null;
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/rdf+xml");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private byte[] getEntry(String id) {
+        int number = getNumber(id);
+        if (id.startsWith("F") && number >= 1 && number <= entries) {
+            return generated.computeIfAbsent(id, accession -> RdfFixture.createEntry(accession, isoforms, length, seed + number)
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        if (id.startsWith("O") && number >= 1 && number <= obsoleteEntries) {
+            String replacedBy = number % 3 == 0 || number == obsoleteEntries
+                    ? RdfFixture.getAccession(number) : getObsoleteAccession(number + 1);
+            return RdfFixture.createObsoleteEntry(id, replacedBy).getBytes(StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    private static int getNumber(String id) {
+        try {
+            return Integer.parseInt(id.substring(1));
+        } catch (NumberFormatException | StringIndexOutOfBoundsException ex) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
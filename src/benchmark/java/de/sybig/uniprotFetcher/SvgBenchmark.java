@@ -0,0 +1,142 @@
+package de.sybig.uniprotFetcher;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares rendering the SVG of an alignment with the {@link SvgWriter} to
+ * the former rendering into a <code>StringBuilder</code> with
+ * <code>String.format</code>. The allocation profiler, on by default, shows
+ * the bytes allocated per rendered entry:
+ * <code>mvn -Pbenchmark test-compile exec:exec -Dbenchmark=SvgBenchmark</code>.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SvgBenchmark {
+
+    private static final int WIDTH = 1000;
+    private static final int LINE_HEIGHT = 25;
+
+    @Param({"10"})
+    public int isoforms;
+
+    @Param({"10", "100"})
+    public int featuresPerIsoform;
+
+    @Param({"1000"})
+    public int length;
+
+    private List<AlignedSequence> alignment;
+    private final OutputStream sink = new NullOutputStream();
+
+    @Setup
+    public void setUp() {
+        StringBuilder residues = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            residues.append("ACDEFGHIKLMNPQRSTVWY".charAt(i % 20));
+        }
+        alignment = new ArrayList<>();
+        for (int i = 0; i < isoforms; i++) {
+            Isoform isoform = new Isoform();
+            isoform.setId("P12345-" + (i + 1));
+            AlignedSequence sequence = new AlignedSequence(residues.toString(), isoform);
+            List<SequenceFeature> features = new ArrayList<>(sequence.getFeatures());
+            for (int f = 0; f < featuresPerIsoform; f++) {
+                SequenceFeature feature = new SequenceFeature();
+                int start = 1 + f * (length / featuresPerIsoform);
+                feature.setStart(start);
+                feature.setEnd(start + 3);
+                feature.setType(f % 2 == 0 ? "mismatch" : "gapI");
+                features.add(feature);
+            }
+            sequence.setFeatures(features);
+            alignment.add(sequence);
+        }
+    }
+
+    @Benchmark
+    public void svgWriter() throws IOException {
+        new SvgWriter(sink).write(alignment, "ACDEF", "#FF0000", WIDTH);
+    }
+
+    @Benchmark
+    public void stringFormat() throws IOException {
+        sink.write(renderWithFormat(alignment, "ACDEF", "#FF0000", WIDTH).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The rendering used before the {@link SvgWriter}, without the script of
+     * the document.
+     */
+    private static String renderWithFormat(List<AlignedSequence> alignment, String sequence, String color, int width) {
+        StringBuilder svg = new StringBuilder();
+        svg.append(String.format("<svg width=\"%d\" height=\"%d\" xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" onload=\"init(evt)\">\n", width, (alignment.size() * LINE_HEIGHT + 30)));
+        int maxLength = 0;
+        for (AlignedSequence aligned : alignment) {
+            maxLength = Math.max(maxLength, aligned.getSequence().length());
+        }
+        double aaSize = ((double) width) / maxLength;
+        String canonicalSequence = alignment.get(0).getSequence();
+        int start = canonicalSequence.replace("-", "").indexOf(sequence);
+        if (start >= 0) {
+            int end = start + sequence.length();
+            svg.append(String.format("  <rect x = \"%d\" y = \"%d\" width = \"%d\" height = \"%d\" stroke = \"none\" fill = \"%s\"/>\n",
+                    (int) (aaSize * start), 0, (int) (aaSize * end - start), 25 * alignment.size() + 20, color));
+        }
+        int ypos = 10;
+        for (AlignedSequence aligned : alignment) {
+            svg.append(String.format("<g>\n"
+                    + "  <rect x = \"5\" y = \"%d\" width = \"%d\" height = \"20\" stroke = \"none\" fill = \"#FFCC62\"/>\n",
+                    ypos, (int) (aaSize * aligned.getSequence().length())));
+            for (SequenceFeature feature : aligned.getFeatures()) {
+                String featureColor = null;
+                if ("gap".equals(feature.getType()) || "gapD".equals(feature.getType()) || "gapI".equals(feature.getType())) {
+                    featureColor = "EEEEEE";
+                } else if ("mismatch".equals(feature.getType())) {
+                    featureColor = "FFAAAA";
+                }
+                if (featureColor == null) {
+                    continue;
+                }
+                String tooltip = String.format("%s: %d - %d (%d)", feature.getType(), feature.getStart() - feature.getMovedStart(),
+                        feature.getEnd() - feature.getMovedStart(), feature.getLength());
+                svg.append(String.format("  <rect x = \"%d\" y = \"%d\" width = \"%d\" height = \"18\" "
+                        + "stroke = \"none\" fill = \"#%s\" "
+                        + "onmousemove=\"ShowTooltip(evt, '%s')\"\n"
+                        + "    onmouseout=\"HideTooltip()\" /> \n",
+                        (int) (feature.getStart() * aaSize + 5),
+                        ypos + 1, (int) (aaSize * (feature.getLength())), featureColor,
+                        tooltip));
+            }
+            svg.append(String.format("  <text x=\"%d\" y=\"%d\" font-family=\"Verdana\" font-size=\"10\" fill=\"blue\">%s</text>\n</g>\n\n",
+                    width - 60, ypos + 15, aligned.getId()));
+            ypos += LINE_HEIGHT;
+        }
+        svg.append("<text class=\"tooltip\" id=\"tooltip\"\n"
+                + "      x=\"0\" y=\"0\" visibility=\"hidden\">Tooltip</text>\n");
+        svg.append("</svg>");
+        return svg.toString();
+    }
+}
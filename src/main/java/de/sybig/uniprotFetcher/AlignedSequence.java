@@ -1,8 +1,8 @@
 package de.sybig.uniprotFetcher;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,16 +15,36 @@ public class AlignedSequence {
     private final Logger logger = LoggerFactory.getLogger(AlignedSequence.class);
 
     private String type = "modified";
-    private List<SequenceFeature> features;
-    private String sequence;
+    private FeatureIndex features = new FeatureIndex();
+    private GappedSequence sequence;
     private int _movedStart = 0;
 
     private transient Isoform parentIsoform;
-    private List<AlignedSequence> allAlignedSequences;
+    private Map<String, AlignedSequence> alignedSequences;
+
+    /**
+     * The sequence before the alignment and the gaps inserted since, to
+     * replay the alignment of this sequence for the sequences based on it.
+     */
+    private String initialSequence;
+    private final List<GapInsertion> insertions = new ArrayList<>();
+    /**
+     * The position of the current modification in the order of the serial
+     * alignment.
+     */
+    private long stamp;
+    /**
+     * The sequence this isoform is based on, replayed to the current
+     * modification, if the sequences are aligned in parallel.
+     */
+    private GappedSequence replayedBase;
+    private AlignedSequence replayedFrom;
+    private int replayed;
 
     public AlignedSequence(String sequence, Isoform parentIsoform) {
         SequenceFeature sf = new SequenceFeature();
-        this.sequence = sequence;
+        this.sequence = new GappedSequence(sequence);
+        this.initialSequence = sequence;
         this.parentIsoform = parentIsoform;
         sf.setStart(1);
         sf.setEnd(sequence.length());
@@ -36,9 +56,11 @@ public class AlignedSequence {
      *
      * @param m The modification tho apply.
      * @param isoform The isoform with the modification.
+     * @param alignedSequences All sequences of the alignment by the id of
+     * their isoform.
      */
-    public void applyModification(Modification m, Isoform isoform, List<AlignedSequence> allAlignedSequences) {
-        this.allAlignedSequences = allAlignedSequences;
+    public void applyModification(Modification m, Isoform isoform, Map<String, AlignedSequence> alignedSequences) {
+        this.alignedSequences = alignedSequences;
         if ((m.getEnd() - m.getBegin()) > m.getSubstitution().length()) {
             logger.trace("Treating modification as deletion");
             applyDeletion(m, isoform);
@@ -49,6 +71,49 @@ public class AlignedSequence {
 
     }
 
+    /**
+     * Applies all modifications of the alignment to this sequence, with the
+     * same result as applying each modification to all sequences one after
+     * the other. The gaps of the sequence this isoform is based on are
+     * replayed from the record of that sequence, which therefore has to be
+     * aligned completely before.
+     *
+     * @param isoforms The isoforms with the modifications, in the order of
+     * the alignment.
+     * @param position The position of this sequence in the alignment.
+     * @param alignedSequences All sequences of the alignment by the id of
+     * their isoform.
+     */
+    void applyModifications(List<Isoform> isoforms, int position, Map<String, AlignedSequence> alignedSequences) {
+        String basedOn = parentIsoform.getBasedOn();
+        replayedFrom = basedOn == null ? null : alignedSequences.get(basedOn);
+        if (replayedFrom != null) {
+            replayedBase = new GappedSequence(replayedFrom.initialSequence);
+            replayed = 0;
+        }
+        try {
+            long step = 0;
+            for (Isoform isoform : isoforms) {
+                if (isoform.getModifications() == null) {
+                    continue;
+                }
+                for (Modification m : isoform.getModifications()) {
+                    stamp = step * alignedSequences.size() + position;
+                    applyModification(m, isoform, alignedSequences);
+                    step++;
+                }
+            }
+        } finally {
+            replayedBase = null;
+            replayedFrom = null;
+        }
+    }
+
+    private void insertGap(int index, int count) {
+        sequence.insertGap(index, count);
+        insertions.add(new GapInsertion(stamp, index, count));
+    }
+
     private void applyDeletion(Modification modiToApply, Isoform isoform) {
         if (!getId().equals(isoform.getId())) {
             return;
@@ -79,9 +144,7 @@ public class AlignedSequence {
         gap.setEnd(modiToApply.getEnd() + movedStart);
         gap.setMovedStart(movedStart);
         gap.setType("gapD");
-        sequence = sequence.substring(0, (modiToApply.getBegin() + sub))
-                + String.join("", Collections.nCopies(gap.getLength(), "-"))
-                + sequence.substring(gap.getStart() - movedStart, sequence.length());
+        insertGap(modiToApply.getBegin() + sub, gap.getLength());
         this._movedStart += gap.getLength();
         addFeature(gap);
     }
@@ -103,7 +166,7 @@ public class AlignedSequence {
             logger.trace("working on own sequence");
             int sub = modToApply.getSubstitution() == null ? 0 : modToApply.getSubstitution().length();
 
-            if (sub <= (modToApply.getSubstitution().length())) {
+            if (sub <= modToApply.getLength()) {
                 logger.trace("Substitution is smaller or equal to the length of the  modification, inserting mismatch in own sequence");
                 // mismatch of the same length
                 SequenceFeature mismatch = new SequenceFeature();
@@ -133,9 +196,7 @@ public class AlignedSequence {
                 gap.setType("gap");
                 addFeature(gap);
 
-                sequence = sequence.substring(0, (ranges[0].getBegin() - 1))
-                        + String.join("", Collections.nCopies(gap.getEnd() - gap.getStart() - 1, "-"))
-                        + sequence.substring(gap.getStart() - 1 - movedStart, sequence.length());
+                insertGap(ranges[0].getBegin() - 1, gap.getEnd() - gap.getStart() - 1);
                 _movedStart += gap.getLength();
 
                 movedStart += ranges[0].getLength();
@@ -166,16 +227,12 @@ public class AlignedSequence {
                 addFeature(gap);
                 logger.debug("Adding feature {} to sequence {}", gap, getId());
 
-               
-                if (sequence.length() < modToApply.getBegin()){
-                    sequence = String.join("", Collections.nCopies(modToApply.getBegin() - sequence.length(), "*"))
-                            + sequence;
-                }
-                sequence = sequence.substring(0, (modToApply.getBegin() - 1))
-                        + String.join("", Collections.nCopies(gap.getLength(), "-"))
-                        + sequence.substring(gap.getStart() - movedStart - 1, sequence.length());
+
+                // a sequence shorter than the start of the modification gets the gap before its last residue
+                int length = sequence.length();
+                int index = length >= modToApply.getBegin() ? modToApply.getBegin() - 1 : Math.max(length - 1, 0);
+                insertGap(index, gap.getLength());
 //                this._movedStart += gap.getLength();
-                sequence = sequence.replaceAll("\\*", "");
             }
 
         }
@@ -298,11 +355,10 @@ public class AlignedSequence {
     }
 
     private boolean checkForSameModificationInCanocicalSequence(Modification modToApply, Isoform isoform, int movedStart) {
-        for (SequenceFeature sf : features) {  //TODO consider moved start
-
-            if (sf.getType() != null && sf.getType().startsWith("gap")
-                    && (modToApply.getBegin() == (sf.getStart()))
-                    && ((modToApply.getBegin() + modToApply.getSubstitution().length()) == (sf.getEnd()))) {
+        //TODO consider moved start
+        int end = modToApply.getBegin() + modToApply.getSubstitution().length();
+        for (SequenceFeature sf : features.getWithRange(modToApply.getBegin(), end)) {
+            if (sf.getType() != null && sf.getType().startsWith("gap")) {
                 return true;
             }
             // ToDo overalap at start
@@ -359,31 +415,34 @@ public class AlignedSequence {
         return false;
     }
 
+    /**
+     * Gets the number of gaps in the sequence this isoform is based on, in
+     * front of a position of that sequence.
+     *
+     * @param targetPos The position, starting with 1, in the based on
+     * sequence without gaps.
+     * @return The number of gaps in front of the position, 0 if the isoform
+     * is not based on another one of the alignment.
+     */
     public int getMovedStartOfUnderlayingSequence(int targetPos) {
         String basedOn = parentIsoform.getBasedOn();
-        if (basedOn == null) {
+        if (basedOn == null || alignedSequences == null) {
             return 0;
         }
-        String underlayingSequence = null;
-        int movedStart = 0;
-
-        for (AlignedSequence as : allAlignedSequences) {
-            if (basedOn.equals(as.getParentIsoform().getId())) {
-                underlayingSequence = as.getSequence();
+        if (replayedBase != null) {
+            // the gaps inserted before the current modification in the serial order
+            List<GapInsertion> gaps = replayedFrom.insertions;
+            while (replayed < gaps.size() && gaps.get(replayed).stamp < stamp) {
+                GapInsertion gap = gaps.get(replayed++);
+                replayedBase.insertGap(gap.index, gap.count);
             }
+            return replayedBase.getGapsBefore(targetPos - 1);
         }
-        int pos = 0;
-        for (int i = 0; i < underlayingSequence.length(); i++) {
-            if (underlayingSequence.substring(i).equals("-")) {
-                movedStart++;
-            } else {
-                pos++;
-                if (pos >= targetPos) {
-                    return movedStart;
-                }
-            }
+        AlignedSequence underlaying = alignedSequences.get(basedOn);
+        if (underlaying == null) {
+            return 0;
         }
-        return movedStart;
+        return underlaying.sequence.getGapsBefore(targetPos - 1);
     }
 
     public Isoform getParentIsoform() {
@@ -405,37 +464,66 @@ public class AlignedSequence {
         return parentIsoform.getId();
     }
 
+    /**
+     * The sequence with the gaps of the alignment written as <code>-</code>.
+     *
+     * @return The aligned sequence.
+     */
     public String getSequence() {
+        return sequence.toString();
+    }
+
+    GappedSequence getGappedSequence() {
         return sequence;
     }
 
     public void setSequence(String sequence) {
-        this.sequence = sequence;
+        this.sequence = new GappedSequence(sequence);
+        this.initialSequence = sequence;
+        insertions.clear();
     }
 
     public List<SequenceFeature> getFeatures() {
-        return features;
+        return features.getFeatures();
     }
 
     public void setFeatures(List<SequenceFeature> features) {
-        this.features = features;
+        this.features = new FeatureIndex(features);
+    }
+
+    /**
+     * Gets the features sharing at least one position with a range of the
+     * aligned sequence.
+     *
+     * @param start The first position of the range.
+     * @param end The last position of the range.
+     * @return The features ordered by their start.
+     */
+    public List<SequenceFeature> getFeatures(int start, int end) {
+        return features.getOverlapping(start, end);
     }
 
     private final void addFeature(SequenceFeature feature) {
-        if (features == null) {
-            features = new ArrayList<>();
-        }
         features.add(feature);
     }
 
     private boolean featureAlreadyAdded(SequenceFeature gap) {
-        if (features == null) {
-            return false;
-        }
-        if (features.contains(gap)) {
-            return true;
-        }
-        return false;
+        return features.contains(gap);
     }
 
+    /**
+     * Gaps inserted into the sequence.
+     */
+    private static class GapInsertion {
+
+        private final long stamp;
+        private final int index;
+        private final int count;
+
+        GapInsertion(long stamp, int index, int count) {
+            this.stamp = stamp;
+            this.index = index;
+            this.count = count;
+        }
+    }
 }
@@ -0,0 +1,159 @@
+package de.sybig.uniprotFetcher;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aligns the isoforms of an entry by applying the modifications of all
+ * isoforms to the sequences of all isoforms.
+ *
+ * The serial alignment applies each modification to all sequences before the
+ * next one. A sequence only reads the gaps of the sequence its isoform is
+ * based on, so the sequences are aligned in parallel in waves: first the
+ * sequences not based on another one of the entry, then the sequences based
+ * on these, and so on. Each sequence replays the gaps of the sequence it is
+ * based on as they were at each step of the serial alignment, so the result
+ * is the same as the serial one.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class Aligner {
+
+    private static final Logger logger = LoggerFactory.getLogger(Aligner.class);
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an aligner.
+     *
+     * @param parallelism The number of sequences aligned in parallel, with 1
+     * the sequences are aligned one after the other.
+     */
+    public Aligner(int parallelism) {
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * Stops the threads of the aligner. Alignments started afterwards fail.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Aligns the sequences of the isoforms.
+     *
+     * @param isoforms The isoforms of an entry.
+     * @return The aligned sequences in the order of the isoforms.
+     * @throws InterruptedIOException If the thread was interrupted while
+     * waiting for the alignment.
+     */
+    public List<AlignedSequence> align(List<Isoform> isoforms) throws IOException {
+        List<AlignedSequence> sequences = new ArrayList<>();
+        Map<String, AlignedSequence> byId = createSequences(isoforms, sequences);
+        List<List<Integer>> waves = pool == null || sequences.size() < 2 ? null : getWaves(sequences, byId);
+        if (waves == null) {
+            applySerially(isoforms, sequences, byId);
+            return sequences;
+        }
+        for (List<Integer> wave : waves) {
+            List<Callable<Void>> tasks = new ArrayList<>(wave.size());
+            for (int position : wave) {
+                AlignedSequence sequence = sequences.get(position);
+                tasks.add(() -> {
+                    sequence.applyModifications(isoforms, position, byId);
+                    return null;
+                });
+            }
+            try {
+                for (Future<Void> future : pool.invokeAll(tasks)) {
+                    future.get();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while aligning " + sequences.get(0).getId());
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw new IllegalStateException(ex.getCause());
+            }
+        }
+        return sequences;
+    }
+
+    /**
+     * Aligns the sequences of the isoforms one modification after the other.
+     *
+     * @param isoforms The isoforms of an entry.
+     * @return The aligned sequences in the order of the isoforms.
+     */
+    static List<AlignedSequence> alignSerially(List<Isoform> isoforms) {
+        List<AlignedSequence> sequences = new ArrayList<>();
+        applySerially(isoforms, sequences, createSequences(isoforms, sequences));
+        return sequences;
+    }
+
+    private static Map<String, AlignedSequence> createSequences(List<Isoform> isoforms, List<AlignedSequence> sequences) {
+        Map<String, AlignedSequence> byId = new HashMap<>();
+        // Init all sequence objects with the sequence as single feature
+        for (Isoform isoform : isoforms) {
+            AlignedSequence sequence = new AlignedSequence(isoform.getSequence(), isoform);
+            sequences.add(sequence);
+            byId.put(isoform.getId(), sequence);
+        }
+        return byId;
+    }
+
+    private static void applySerially(List<Isoform> isoforms, List<AlignedSequence> sequences, Map<String, AlignedSequence> byId) {
+        for (Isoform isoform : isoforms) {
+            if (isoform.getModifications() == null) {
+                continue;
+            }
+            for (Modification m : isoform.getModifications()) {
+                for (AlignedSequence as : sequences) {
+                    logger.trace("Applying modification '{}' to sequence {}", m, as.getId());
+                    as.applyModification(m, isoform, byId);  // the current modification and the parent isoform
+                }
+            }
+        }
+    }
+
+    /**
+     * Groups the positions of the sequences by the length of the chain of
+     * isoforms they are based on.
+     *
+     * @return The groups, or <code>null</code> if the isoforms are based on
+     * each other in a cycle.
+     */
+    private static List<List<Integer>> getWaves(List<AlignedSequence> sequences, Map<String, AlignedSequence> byId) {
+        List<List<Integer>> waves = new ArrayList<>();
+        for (int position = 0; position < sequences.size(); position++) {
+            int depth = 0;
+            AlignedSequence sequence = sequences.get(position);
+            while ((sequence = byId.get(sequence.getParentIsoform().getBasedOn())) != null) {
+                if (++depth >= sequences.size()) {
+                    logger.warn("Isoforms of {} are based on each other, aligning them serially", sequences.get(0).getId());
+                    return null;
+                }
+            }
+            while (waves.size() <= depth) {
+                waves.add(new ArrayList<>());
+            }
+            waves.get(depth).add(position);
+        }
+        return waves;
+    }
+}
@@ -0,0 +1,51 @@
+package de.sybig.uniprotFetcher;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.List;
+
+/**
+ * A line of the response of <code>/isoforms/batch</code>, with either the
+ * isoforms of an entry or the reason they could not be read.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResult {
+
+    private String id;
+    private List<Isoform> isoforms;
+    private String error;
+
+    public BatchResult() {
+    }
+
+    public BatchResult(String id, List<Isoform> isoforms, String error) {
+        this.id = id;
+        this.isoforms = isoforms;
+        this.error = error;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public List<Isoform> getIsoforms() {
+        return isoforms;
+    }
+
+    public void setIsoforms(List<Isoform> isoforms) {
+        this.isoforms = isoforms;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,82 @@
+package de.sybig.uniprotFetcher;
+
+import java.util.List;
+
+/**
+ * An aligned sequence with the gaps as run-length encoded operations instead
+ * of the sequence with the gaps. The residues are those of the isoform with
+ * the id, from <code>/isoforms/{uniprotID}</code>.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class CompactAlignedSequence {
+
+    private String id;
+    private String type;
+    private int length;
+    private String cigar;
+    private List<SequenceFeature> features;
+
+    public CompactAlignedSequence() {
+    }
+
+    public CompactAlignedSequence(AlignedSequence sequence) {
+        GappedSequence gapped = sequence.getGappedSequence();
+        this.id = sequence.getId();
+        this.type = sequence.getType();
+        this.length = gapped.length();
+        this.cigar = gapped.toCigar();
+        this.features = sequence.getFeatures();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * The length of the sequence with the gaps.
+     *
+     * @return The length.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public void setLength(int length) {
+        this.length = length;
+    }
+
+    /**
+     * The residues and gaps of the aligned sequence, like <code>3M2D4M</code>
+     * for three residues, two gaps and four residues.
+     *
+     * @return The operations.
+     */
+    public String getCigar() {
+        return cigar;
+    }
+
+    public void setCigar(String cigar) {
+        this.cigar = cigar;
+    }
+
+    public List<SequenceFeature> getFeatures() {
+        return features;
+    }
+
+    public void setFeatures(List<SequenceFeature> features) {
+        this.features = features;
+    }
+}
@@ -0,0 +1,35 @@
+package de.sybig.uniprotFetcher;
+
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import java.nio.file.Paths;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+/**
+ * Removes the replaced versions of the files from the segments of a packed
+ * store. Run it while the application is stopped:
+ * <code>java -jar uniprotFetcher.jar compact config.yaml</code>.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class CompactCommand extends ConfiguredCommand<UniProtConfiguration> {
+
+    public CompactCommand() {
+        super("compact", "Removes replaced files from the segments of the packed store");
+    }
+
+    @Override
+    protected void run(Bootstrap<UniProtConfiguration> bootstrap, Namespace namespace,
+            UniProtConfiguration configuration) throws Exception {
+        if (!configuration.isPacked()) {
+            System.err.println("The store is not packed, nothing to compact");
+            return;
+        }
+        try (PackedStore store = new PackedStore(Paths.get(configuration.getDataDir()),
+                configuration.getSegmentSize().toBytes())) {
+            long before = store.size();
+            long reclaimed = store.compact();
+            System.out.printf("Compacted %d files, %d of %d bytes reclaimed%n", store.fileCount(), reclaimed, before);
+        }
+    }
+}
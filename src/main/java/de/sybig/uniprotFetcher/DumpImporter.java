@@ -0,0 +1,265 @@
+package de.sybig.uniprotFetcher;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports the entries of UniProt RDF dumps into the store, instead of
+ * fetching them one by one from UniProt.
+ *
+ * The dump is read and split into entries by the calling thread, the
+ * entries are parsed and written by a pool of workers. The queue in front of
+ * the workers is bounded, if it is full the reading thread imports the entry
+ * itself, so only a few entries are in memory whatever the size of the dump.
+ *
+ * The number of entries of each dump processed without a gap is written to a
+ * checkpoint file. An interrupted import skips these entries when it is
+ * started again. The IDs of the entries that could not be imported are
+ * written to a second file, <code>.failed</code> appended to the name of the
+ * checkpoint file, and are imported again by the next run.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class DumpImporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DumpImporter.class);
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+    private final UniProtConfiguration configuration;
+    private final RdfStore rdfStore;
+    private final QualityIndex qualityIndex;
+    private final int threads;
+    private final Path checkpointFile;
+    private final Path failedFile;
+    private final Map<String, Long> checkpoints = new HashMap<>();
+    private final Map<String, Set<String>> failedEntries = new HashMap<>();
+
+    /**
+     * Creates an importer and reads the checkpoint file and the failed
+     * entries, if they exist.
+     *
+     * @param configuration The configuration of the store.
+     * @param rdfStore The store the entries are written to.
+     * @param qualityIndex The index the quality of the entries is added to.
+     * @param threads The number of entries parsed and written in parallel.
+     * @param checkpointFile The file of the checkpoints.
+     * @throws IOException If the checkpoint file could not be read.
+     */
+    public DumpImporter(UniProtConfiguration configuration, RdfStore rdfStore, QualityIndex qualityIndex,
+            int threads, Path checkpointFile) throws IOException {
+        this.configuration = configuration;
+        this.rdfStore = rdfStore;
+        this.qualityIndex = qualityIndex;
+        this.threads = threads;
+        this.checkpointFile = checkpointFile;
+        failedFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".failed");
+        if (Files.exists(checkpointFile)) {
+            for (String line : Files.readAllLines(checkpointFile, StandardCharsets.UTF_8)) {
+                int tab = line.lastIndexOf('\t');
+                if (tab > 0) {
+                    checkpoints.put(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)));
+                }
+            }
+        }
+        if (Files.exists(failedFile)) {
+            for (String line : Files.readAllLines(failedFile, StandardCharsets.UTF_8)) {
+                int tab = line.lastIndexOf('\t');
+                if (tab > 0) {
+                    failedEntries.computeIfAbsent(line.substring(0, tab), k -> ConcurrentHashMap.newKeySet())
+                            .add(line.substring(tab + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Imports the entries of a dump, which may be gzip compressed. Entries
+     * processed by an earlier run, according to the checkpoint, are skipped,
+     * except for those that failed.
+     *
+     * @param dump The dump file.
+     * @return The number of entries imported.
+     * @throws IOException If the dump could not be read.
+     * @throws InterruptedException If the import was interrupted.
+     */
+    public long run(Path dump) throws IOException, InterruptedException {
+        String key = dump.toAbsolutePath().normalize().toString();
+        long skip = checkpoints.getOrDefault(key, 0L);
+        if (skip > 0) {
+            logger.info("Skipping {} entries of {} imported before", skip, dump);
+        }
+        Progress progress = new Progress(skip);
+        Set<String> failedIds = getFailedEntries(key);
+        Set<String> retries = new HashSet<>(failedIds);
+        AtomicLong imported = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4),
+                new ThreadFactoryBuilder().setNameFormat("import-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        long start = System.nanoTime();
+        long lastReport = start;
+        long sequence = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                RdfStore.decompress(Files.newInputStream(dump)), StandardCharsets.UTF_8), 1024 * 1024)) {
+            DumpSplitter splitter = new DumpSplitter(reader);
+            DumpSplitter.Record record;
+            while ((record = splitter.next()) != null) {
+                long number = sequence++;
+                // a retried entry is already part of the checkpoint
+                boolean retry = number < skip;
+                if (retry && !retries.contains(record.getId())) {
+                    continue;
+                }
+                DumpSplitter.Record entry = record;
+                executor.execute(() -> {
+                    try {
+                        importEntry(entry);
+                        imported.incrementAndGet();
+                        failedIds.remove(entry.getId());
+                    } catch (Exception ex) {
+                        failed.incrementAndGet();
+                        failedIds.add(entry.getId());
+                        logger.warn("Could not import {}: {}", entry.getId(), ex.toString());
+                    } finally {
+                        if (!retry) {
+                            progress.done(number);
+                        }
+                    }
+                });
+                long now = System.nanoTime();
+                if (now - lastReport > REPORT_INTERVAL) {
+                    lastReport = now;
+                    report(dump, imported.get(), now - start);
+                    saveCheckpoint(key, progress.contiguous());
+                }
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.HOURS);
+            saveCheckpoint(key, progress.contiguous());
+        }
+        report(dump, imported.get(), System.nanoTime() - start);
+        if (failed.get() > 0) {
+            logger.warn("{} entries of {} could not be imported, they are listed in {}", failed.get(), dump, failedFile);
+        }
+        return imported.get();
+    }
+
+    private synchronized Set<String> getFailedEntries(String key) {
+        return failedEntries.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet());
+    }
+
+    private void importEntry(DumpSplitter.Record record) throws Exception {
+        byte[] content = record.getContent().getBytes(StandardCharsets.UTF_8);
+        UniProtEntry entry = new RdfEntryReader().read(new ByteArrayInputStream(content));
+        entry.setId(record.getId());
+        rdfStore.store(record.getId(), new ByteArrayInputStream(content));
+        if (configuration.isSnapshots()) {
+            rdfStore.writeSnapshot(record.getId(), entry);
+        }
+        qualityIndex.put(entry);
+    }
+
+    private void report(Path dump, long entries, long nanos) {
+        double seconds = nanos / 1e9;
+        logger.info("Imported {} entries of {} in {} s, {} entries/s", entries, dump,
+                String.format("%.1f", seconds), String.format("%.1f", seconds > 0 ? entries / seconds : 0));
+    }
+
+    /**
+     * Writes the checkpoints and the failed entries. The failed entries are
+     * written first, so a checkpoint passing a failed entry is never saved
+     * without it.
+     */
+    private synchronized void saveCheckpoint(String key, long entries) throws IOException {
+        List<String> failedLines = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> failed : failedEntries.entrySet()) {
+            for (String id : failed.getValue()) {
+                failedLines.add(failed.getKey() + "\t" + id);
+            }
+        }
+        write(failedFile, failedLines);
+        checkpoints.put(key, entries);
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Long> checkpoint : checkpoints.entrySet()) {
+            lines.add(checkpoint.getKey() + "\t" + checkpoint.getValue());
+        }
+        write(checkpointFile, lines);
+    }
+
+    private static void write(Path file, List<String> lines) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tempFile = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                for (String line : lines) {
+                    out.write(line + "\n");
+                }
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * The processed entries of a dump, imported or failed. Entries finish out
+     * of order, the checkpoint is the number of entries before the first
+     * unfinished one. Only the entries finished behind it are kept, at most
+     * the ones in the queue and the workers.
+     */
+    static class Progress {
+
+        private final TreeSet<Long> finished = new TreeSet<>();
+        private long contiguous;
+
+        Progress(long skip) {
+            contiguous = skip;
+        }
+
+        synchronized void done(long number) {
+            finished.add(number);
+            while (!finished.isEmpty() && finished.first() == contiguous) {
+                finished.pollFirst();
+                contiguous++;
+            }
+        }
+
+        synchronized long contiguous() {
+            return contiguous;
+        }
+
+        synchronized int pending() {
+            return finished.size();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package de.sybig.uniprotFetcher;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a UniProt RDF/XML dump into one RDF document per entry, reading the
+ * dump line by line in constant memory.
+ *
+ * The dump is expected in the layout written by UniProt, with each start and
+ * end tag of the top level elements on its own line. A record starts with the
+ * <code>rdf:Description</code> of an <code>up:Protein</code> and contains all
+ * following top level elements up to the next protein. Each record gets the
+ * XML declaration and the <code>rdf:RDF</code> start tag, with its
+ * namespaces, of the document it was read from. A dump may consist of several
+ * concatenated documents.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class DumpSplitter {
+
+    private static final String XML_DECLARATION = "<?xml version='1.0' encoding='UTF-8'?>\n";
+    private static final String RDF_START = "<rdf:RDF";
+    private static final String RDF_END = "</rdf:RDF>";
+    private static final String DESCRIPTION_START = "<rdf:Description";
+    private static final String PROTEIN_TYPE = "rdf:resource=\"http://purl.uniprot.org/core/Protein\"";
+    private static final Pattern ABOUT = Pattern.compile("rdf:about=\"([^\"]*)\"");
+    private static final Pattern ELEMENT_NAME = Pattern.compile("<([\\w:.-]+)");
+
+    private final BufferedReader reader;
+    private String header;
+    private long lineNumber;
+    /**
+     * The first block of the next record, read while finishing the previous
+     * one.
+     */
+    private Block pending;
+
+    public DumpSplitter(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next entry of the dump.
+     *
+     * @return The entry, or <code>null</code> at the end of the dump.
+     * @throws IOException If the dump could not be read or is not in the
+     * expected layout.
+     */
+    public Record next() throws IOException {
+        Block block = pending;
+        pending = null;
+        while (block == null || !block.isProtein()) {
+            block = nextBlock();
+            if (block == null) {
+                return null;
+            }
+        }
+        StringBuilder content = new StringBuilder(16 * 1024);
+        content.append(XML_DECLARATION).append(header);
+        content.append(block.content);
+        Block following;
+        while ((following = nextBlock()) != null && !following.isProtein()) {
+            content.append(following.content);
+        }
+        pending = following;
+        content.append(RDF_END).append('\n');
+        return new Record(block.id, content.toString());
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Reads the next top level element inside <code>rdf:RDF</code>, skipping
+     * the XML declarations, the <code>rdf:RDF</code> tags and empty lines
+     * between the elements.
+     */
+    private Block nextBlock() throws IOException {
+        String line;
+        while ((line = readLine()) != null) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("<?xml") || trimmed.equals(RDF_END)) {
+                continue;
+            }
+            if (trimmed.startsWith(RDF_START)) {
+                readHeader(line);
+                continue;
+            }
+            if (header == null) {
+                throw new IOException("Line " + lineNumber + " is not inside rdf:RDF");
+            }
+            if (trimmed.startsWith("<!--")) {
+                skipComment(line);
+                continue;
+            }
+            return readBlock(line, trimmed);
+        }
+        return null;
+    }
+
+    private void readHeader(String line) throws IOException {
+        StringBuilder start = new StringBuilder();
+        start.append(line).append('\n');
+        while (!line.trim().endsWith(">")) {
+            line = readLine();
+            if (line == null) {
+                throw new IOException("Unexpected end of the dump in the rdf:RDF tag");
+            }
+            start.append(line).append('\n');
+        }
+        header = start.toString();
+    }
+
+    private void skipComment(String line) throws IOException {
+        while (!line.contains("-->")) {
+            line = readLine();
+            if (line == null) {
+                return;
+            }
+        }
+    }
+
+    private Block readBlock(String line, String trimmed) throws IOException {
+        Matcher name = ELEMENT_NAME.matcher(trimmed);
+        if (!name.lookingAt()) {
+            throw new IOException("Line " + lineNumber + " does not start an element: " + trimmed);
+        }
+        String element = name.group(1);
+        Matcher about = ABOUT.matcher(trimmed);
+        Block block = new Block(about.find() ? about.group(1) : null);
+        block.content.append(line).append('\n');
+        if (trimmed.endsWith("/>")) {
+            return block;
+        }
+        String start = "<" + element;
+        String end = "</" + element + ">";
+        boolean description = DESCRIPTION_START.equals(start);
+        int depth = 1;
+        while (depth > 0) {
+            line = readLine();
+            if (line == null) {
+                throw new IOException("Unexpected end of the dump in " + element);
+            }
+            block.content.append(line).append('\n');
+            trimmed = line.trim();
+            if (trimmed.startsWith(start) && !trimmed.endsWith("/>") && !trimmed.contains(end)) {
+                depth++;
+            } else if (trimmed.equals(end)) {
+                depth--;
+            } else if (description && depth == 1 && trimmed.startsWith("<rdf:type") && trimmed.contains(PROTEIN_TYPE)) {
+                block.protein = true;
+            }
+        }
+        return block;
+    }
+
+    private String readLine() throws IOException {
+        String line = reader.readLine();
+        if (line != null) {
+            lineNumber++;
+        }
+        return line;
+    }
+
+    /**
+     * A top level element of the dump.
+     */
+    private static class Block {
+
+        private final StringBuilder content = new StringBuilder();
+        private final String id;
+        private boolean protein;
+
+        Block(String about) {
+            this.id = about == null ? null : about.substring(about.lastIndexOf('/') + 1);
+        }
+
+        boolean isProtein() {
+            return protein && id != null && !id.isEmpty();
+        }
+    }
+
+    /**
+     * The RDF document of one entry.
+     */
+    public static class Record {
+
+        private final String id;
+        private final String content;
+
+        Record(String id, String content) {
+            this.id = id;
+            this.content = content;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getContent() {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package de.sybig.uniprotFetcher;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A compact binary copy of a parsed entry, so the entry can be loaded with a
+ * single read of a small file instead of parsing the RDF/XML again.
+ *
+ * The snapshot starts with a magic number and the version of the format. A
+ * snapshot with another version is not read, the entry is then read from its
+ * RDF file again. Strings are stored as their length in bytes followed by the
+ * UTF-8 bytes, a length of <code>-1</code> stands for <code>null</code>.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class EntrySnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(EntrySnapshot.class);
+
+    static final int MAGIC = 0x55505345; // "UPSE"
+    static final int VERSION = 1;
+
+    private EntrySnapshot() {
+    }
+
+    /**
+     * Writes the snapshot of an entry. The snapshot is written to a temporary
+     * file first and moved to the given path afterwards.
+     *
+     * @param entry The entry to write.
+     * @param file The file of the snapshot.
+     * @throws IOException If the snapshot could not be written.
+     */
+    public static void write(UniProtEntry entry, Path file) throws IOException {
+        Path tempFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                write(entry, out);
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Gets the snapshot of an entry as bytes.
+     *
+     * @param entry The entry to write.
+     * @return The snapshot.
+     * @throws IOException If the snapshot could not be written.
+     */
+    public static byte[] toBytes(UniProtEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(entry, out);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the snapshot of an entry to a stream.
+     *
+     * @param entry The entry to write.
+     * @param out The stream to write to.
+     * @throws IOException If the snapshot could not be written.
+     */
+    public static void write(UniProtEntry entry, DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, entry.getId());
+        writeString(out, entry.getReplacedBy());
+        out.writeBoolean(entry.isReviewed());
+        out.writeBoolean(entry.isObsolete());
+        writeString(out, entry.getExistence());
+        writeIsoform(out, entry.getCanonicalSequence());
+        out.writeInt(entry.getModifiedSequences().size());
+        for (Isoform isoform : entry.getModifiedSequences()) {
+            writeIsoform(out, isoform);
+        }
+    }
+
+    /**
+     * Reads the snapshot of an entry.
+     *
+     * @param file The file of the snapshot.
+     * @return The entry, or <code>null</code> if there is no snapshot or it
+     * was written in another version of the format.
+     * @throws IOException If the snapshot could not be read.
+     */
+    public static UniProtEntry read(Path file) throws IOException {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+        return read(data);
+    }
+
+    /**
+     * Reads the snapshot of an entry from the given bytes.
+     *
+     * @param data The snapshot.
+     * @return The entry, or <code>null</code> if the snapshot was written in
+     * another version of the format or is not complete.
+     */
+    public static UniProtEntry read(byte[] data) {
+        return read(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Reads the snapshot of an entry from the given buffer.
+     *
+     * @param buffer The snapshot, from the position to the limit of the
+     * buffer.
+     * @return The entry, or <code>null</code> if the snapshot was written in
+     * another version of the format or is not complete.
+     */
+    public static UniProtEntry read(ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                logger.warn("Not a snapshot");
+                return null;
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                logger.debug("Snapshot has version {}, expected {}", version, VERSION);
+                return null;
+            }
+            UniProtEntry entry = new UniProtEntry();
+            entry.setId(readString(buffer));
+            entry.setReplacedBy(readString(buffer));
+            entry.setReviewed(buffer.get() != 0);
+            entry.setObsolete(buffer.get() != 0);
+            entry.setExistence(readString(buffer));
+            entry.setCanonicalSequence(readIsoform(buffer));
+            int isoforms = readCount(buffer);
+            if (isoforms < 0) {
+                throw new BufferUnderflowException();
+            }
+            List<Isoform> modifiedSequences = new ArrayList<>(isoforms);
+            for (int i = 0; i < isoforms; i++) {
+                modifiedSequences.add(readIsoform(buffer));
+            }
+            entry.setModifiedSequences(modifiedSequences);
+            return entry;
+        } catch (BufferUnderflowException ex) {
+            logger.warn("Snapshot is truncated or corrupt");
+            return null;
+        }
+    }
+
+    private static void writeIsoform(DataOutputStream out, Isoform isoform) throws IOException {
+        writeString(out, isoform.getId());
+        writeString(out, isoform.getUrl());
+        writeString(out, isoform.getSequence());
+        writeString(out, isoform.getBasedOn());
+        List<String> names = isoform.getNames();
+        out.writeInt(names == null ? -1 : names.size());
+        if (names != null) {
+            for (String name : names) {
+                writeString(out, name);
+            }
+        }
+        List<Modification> modifications = isoform.getModifications();
+        out.writeInt(modifications == null ? -1 : modifications.size());
+        if (modifications != null) {
+            for (Modification modification : modifications) {
+                writeString(out, modification.getId());
+                writeString(out, modification.getSubstitution());
+                out.writeInt(modification.getBegin());
+                out.writeInt(modification.getEnd());
+            }
+        }
+    }
+
+    private static Isoform readIsoform(ByteBuffer buffer) {
+        Isoform isoform = new Isoform();
+        isoform.setId(readString(buffer));
+        isoform.setUrl(readString(buffer));
+        isoform.setSequence(readString(buffer));
+        isoform.setBasedOn(readString(buffer));
+        int names = readCount(buffer);
+        if (names >= 0) {
+            List<String> nameList = new ArrayList<>(names);
+            for (int i = 0; i < names; i++) {
+                nameList.add(readString(buffer));
+            }
+            isoform.setNames(nameList);
+        }
+        int modifications = readCount(buffer);
+        if (modifications >= 0) {
+            List<Modification> modificationList = new ArrayList<>(modifications);
+            for (int i = 0; i < modifications; i++) {
+                Modification modification = new Modification();
+                modification.setId(readString(buffer));
+                modification.setSubstitution(readString(buffer));
+                modification.setBegin(buffer.getInt());
+                modification.setEnd(buffer.getInt());
+                modificationList.add(modification);
+            }
+            isoform.setModifications(modificationList);
+        }
+        return isoform;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads the number of elements of a list, -1 for <code>null</code>. Each
+     * element takes at least four bytes, so a larger count than the remaining
+     * bytes can only come from a corrupt snapshot.
+     */
+    private static int readCount(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < -1 || count > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < -1 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        if (buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,252 @@
+package de.sybig.uniprotFetcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The features of a sequence, in the order they were added, indexed by their
+ * range for overlap, containment and exact match queries.
+ *
+ * The ranges are kept in an interval tree: a treap ordered by the start of the
+ * features, each node holding the largest end in its subtree. Adding a
+ * feature and finding the features of a range take logarithmic time plus the
+ * number of features found. Exact matches are found with a hash set.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class FeatureIndex {
+
+    private final List<SequenceFeature> features = new ArrayList<>();
+    private final List<SequenceFeature> view = Collections.unmodifiableList(features);
+    private final Set<SequenceFeature> distinct = new HashSet<>();
+    private Node root;
+
+    public FeatureIndex() {
+        super();
+    }
+
+    public FeatureIndex(List<SequenceFeature> features) {
+        for (SequenceFeature feature : features) {
+            add(feature);
+        }
+    }
+
+    /**
+     * Adds a feature. Its range must not be changed afterwards.
+     *
+     * @param feature The feature to add.
+     */
+    public void add(SequenceFeature feature) {
+        features.add(feature);
+        distinct.add(feature);
+        root = insert(root, new Node(feature, features.size()));
+    }
+
+    /**
+     * Whether an equal feature, with the same range and type, was added.
+     *
+     * @param feature The feature to look for.
+     * @return <code>true</code> if an equal feature was added.
+     */
+    public boolean contains(SequenceFeature feature) {
+        return distinct.contains(feature);
+    }
+
+    /**
+     * All features in the order they were added.
+     *
+     * @return An unmodifiable view of the features.
+     */
+    public List<SequenceFeature> getFeatures() {
+        return view;
+    }
+
+    public int size() {
+        return features.size();
+    }
+
+    /**
+     * Gets the features sharing at least one position with a range.
+     *
+     * @param start The first position of the range.
+     * @param end The last position of the range.
+     * @return The features ordered by their start, features with the same
+     * start in the order they were added.
+     */
+    public List<SequenceFeature> getOverlapping(int start, int end) {
+        List<SequenceFeature> result = new ArrayList<>();
+        collectOverlapping(root, start, end, result);
+        return result;
+    }
+
+    /**
+     * Gets the features covering a whole range.
+     *
+     * @param start The first position of the range.
+     * @param end The last position of the range.
+     * @return The features ordered by their start, features with the same
+     * start in the order they were added.
+     */
+    public List<SequenceFeature> getContaining(int start, int end) {
+        List<SequenceFeature> result = new ArrayList<>();
+        collectContaining(root, start, end, result);
+        return result;
+    }
+
+    /**
+     * Gets the features lying completely inside of a range.
+     *
+     * @param start The first position of the range.
+     * @param end The last position of the range.
+     * @return The features ordered by their start, features with the same
+     * start in the order they were added.
+     */
+    public List<SequenceFeature> getContainedIn(int start, int end) {
+        List<SequenceFeature> result = new ArrayList<>();
+        collectContainedIn(root, start, end, result);
+        return result;
+    }
+
+    /**
+     * Gets the features with exactly the given range, of any type.
+     *
+     * @param start The first position of the range.
+     * @param end The last position of the range.
+     * @return The features in the order they were added.
+     */
+    public List<SequenceFeature> getWithRange(int start, int end) {
+        List<SequenceFeature> result = new ArrayList<>();
+        collectContainedIn(root, start, end, result);
+        result.removeIf(feature -> feature.getStart() != start || feature.getEnd() != end);
+        return result;
+    }
+
+    private void collectOverlapping(Node node, int start, int end, List<SequenceFeature> result) {
+        if (node == null || node.maxEnd < start) {
+            return;
+        }
+        collectOverlapping(node.left, start, end, result);
+        if (node.start > end) {
+            return;
+        }
+        if (node.end >= start) {
+            result.add(node.feature);
+        }
+        collectOverlapping(node.right, start, end, result);
+    }
+
+    private void collectContaining(Node node, int start, int end, List<SequenceFeature> result) {
+        if (node == null || node.maxEnd < end) {
+            return;
+        }
+        collectContaining(node.left, start, end, result);
+        if (node.start > start) {
+            return;
+        }
+        if (node.end >= end) {
+            result.add(node.feature);
+        }
+        collectContaining(node.right, start, end, result);
+    }
+
+    private void collectContainedIn(Node node, int start, int end, List<SequenceFeature> result) {
+        if (node == null) {
+            return;
+        }
+        if (node.start >= start) {
+            collectContainedIn(node.left, start, end, result);
+        }
+        if (node.start > end) {
+            return;
+        }
+        if (node.start >= start && node.end <= end) {
+            result.add(node.feature);
+        }
+        collectContainedIn(node.right, start, end, result);
+    }
+
+    private static Node insert(Node node, Node added) {
+        if (node == null) {
+            return added;
+        }
+        if (added.compareTo(node) < 0) {
+            node.left = insert(node.left, added);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, added);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.update();
+        left.update();
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.update();
+        right.update();
+        return right;
+    }
+
+    /**
+     * A node of the tree, ordered by the start of the feature and the order
+     * the features were added.
+     */
+    private static class Node implements Comparable<Node> {
+
+        private final SequenceFeature feature;
+        private final int start;
+        private final int end;
+        private final int sequence;
+        private final int priority;
+        private int maxEnd;
+        private Node left;
+        private Node right;
+
+        Node(SequenceFeature feature, int sequence) {
+            this.feature = feature;
+            this.start = feature.getStart();
+            this.end = feature.getEnd();
+            this.sequence = sequence;
+            // scrambled sequence number, so the shape of the tree does not
+            // depend on the order of the starts
+            this.priority = sequence * 0x9E3779B9;
+            this.maxEnd = end;
+        }
+
+        void update() {
+            maxEnd = end;
+            if (left != null && left.maxEnd > maxEnd) {
+                maxEnd = left.maxEnd;
+            }
+            if (right != null && right.maxEnd > maxEnd) {
+                maxEnd = right.maxEnd;
+            }
+        }
+
+        @Override
+        public int compareTo(Node other) {
+            if (start != other.start) {
+                return Integer.compare(start, other.start);
+            }
+            return Integer.compare(sequence, other.sequence);
+        }
+    }
+}
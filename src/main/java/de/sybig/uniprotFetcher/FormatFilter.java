@@ -0,0 +1,38 @@
+package de.sybig.uniprotFetcher;
+
+import java.io.IOException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Selects the compact alignment with the query parameter
+ * <code>format=compact</code>, for clients which can not set the
+ * <code>Accept</code> header. Only requests of the alignment are changed,
+ * the parameter is ignored by the other resources.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+@Provider
+@PreMatching
+public class FormatFilter implements ContainerRequestFilter {
+
+    static final String FORMAT = "format";
+    static final String COMPACT = "compact";
+    private static final String ALIGNMENT_PATH = "isoforms/alignmentPos/";
+
+    @Override
+    public void filter(ContainerRequestContext request) throws IOException {
+        // pre-matching, so the changed header selects the resource method
+        String path = request.getUriInfo().getPath(false);
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        if (path.startsWith(ALIGNMENT_PATH)
+                && COMPACT.equals(request.getUriInfo().getQueryParameters().getFirst(FORMAT))) {
+            request.getHeaders().putSingle(HttpHeaders.ACCEPT, Isoforms.COMPACT_ALIGNMENT);
+        }
+    }
+}
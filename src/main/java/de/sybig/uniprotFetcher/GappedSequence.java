@@ -0,0 +1,216 @@
+package de.sybig.uniprotFetcher;
+
+import java.util.Arrays;
+
+/**
+ * A sequence with gaps, stored as the residues without gaps and the number of
+ * gaps in front of each residue. Inserting a gap only changes these numbers,
+ * the sequence with the gaps is built once when it is requested.
+ *
+ * The numbers of gaps are additionally kept in a Fenwick tree, so the number
+ * of gaps in front of a residue and the residue at a position of the sequence
+ * with the gaps are found in logarithmic time.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class GappedSequence {
+
+    static final char GAP = '-';
+
+    private final String residues;
+    /**
+     * The number of gaps before the residue with the index, the last element
+     * holds the gaps at the end.
+     */
+    private final int[] gaps;
+    /**
+     * The Fenwick tree of {@link #gaps}, with the element <code>i</code> of
+     * the gaps at the index <code>i + 1</code>.
+     */
+    private final int[] tree;
+    private int gapCount;
+    private String materialized;
+
+    /**
+     * Creates a sequence from its string form, in which gaps are written as
+     * <code>-</code>.
+     *
+     * @param sequence The sequence.
+     */
+    public GappedSequence(String sequence) {
+        if (sequence.indexOf(GAP) < 0) {
+            residues = sequence;
+            gaps = new int[sequence.length() + 1];
+        } else {
+            StringBuilder ungapped = new StringBuilder(sequence.length());
+            int[] counts = new int[sequence.length() + 1];
+            for (int i = 0; i < sequence.length(); i++) {
+                char c = sequence.charAt(i);
+                if (c == GAP) {
+                    counts[ungapped.length()]++;
+                    gapCount++;
+                } else {
+                    ungapped.append(c);
+                }
+            }
+            residues = ungapped.toString();
+            gaps = Arrays.copyOf(counts, residues.length() + 1);
+        }
+        tree = new int[gaps.length + 1];
+        for (int i = 1; i < tree.length; i++) {
+            tree[i] += gaps[i - 1];
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+        materialized = sequence;
+    }
+
+    /**
+     * The length with the gaps.
+     *
+     * @return The length.
+     */
+    public int length() {
+        return residues.length() + gapCount;
+    }
+
+    public String getResidues() {
+        return residues;
+    }
+
+    public int getGapCount() {
+        return gapCount;
+    }
+
+    /**
+     * Whether the last position of the sequence is a gap.
+     *
+     * @return <code>true</code> if the sequence ends with a gap.
+     */
+    public boolean endsWithGap() {
+        return gaps[residues.length()] > 0;
+    }
+
+    /**
+     * The number of gaps in front of a residue, including the gaps directly
+     * before it. An index behind the last residue gives all gaps.
+     *
+     * @param residue The index of the residue in the sequence without gaps.
+     * @return The number of gaps.
+     */
+    public int getGapsBefore(int residue) {
+        if (residue < 0) {
+            return 0;
+        }
+        int sum = 0;
+        for (int i = Math.min(residue + 1, tree.length - 1); i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Inserts gaps before the given position of the sequence with the gaps.
+     * Gaps inserted next to or into a run of gaps extend the run.
+     *
+     * @param index The position in the sequence with the gaps, between 0 and
+     * the length.
+     * @param count The number of gaps to insert.
+     * @throws StringIndexOutOfBoundsException If the position is outside of
+     * the sequence.
+     * @throws IllegalArgumentException If the count is negative.
+     */
+    public void insertGap(int index, int count) {
+        if (index < 0 || index > length()) {
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative number of gaps: " + count);
+        }
+        if (count == 0) {
+            return;
+        }
+        int residue = toResidueIndex(index);
+        gaps[residue] += count;
+        for (int i = residue + 1; i < tree.length; i += i & -i) {
+            tree[i] += count;
+        }
+        gapCount += count;
+        materialized = null;
+    }
+
+    /**
+     * Gets the index of the residue in front of which a gap at the given
+     * position of the sequence with the gaps is inserted. This is the first
+     * residue which, together with the gaps directly before it, reaches the
+     * position.
+     */
+    private int toResidueIndex(int index) {
+        // find the last residue which ends before the position, each residue
+        // covers itself and the gaps before it
+        int residue = 0;
+        int covered = 0;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            int next = residue + step;
+            if (next < tree.length && covered + tree[next] + step <= index) {
+                residue = next;
+                covered += tree[next] + step;
+            }
+        }
+        return residue;
+    }
+
+    /**
+     * The sequence as run-length encoded operations, <code>M</code> for
+     * residues and <code>D</code> for gaps. <code>3M2D4M</code> is the
+     * sequence <code>ABC--DEFG</code>. The sequence with the gaps is not
+     * built.
+     *
+     * @return The operations.
+     */
+    public String toCigar() {
+        StringBuilder cigar = new StringBuilder();
+        int matches = 0;
+        for (int residue = 0; residue < gaps.length; residue++) {
+            if (gaps[residue] > 0) {
+                if (matches > 0) {
+                    cigar.append(matches).append('M');
+                    matches = 0;
+                }
+                cigar.append(gaps[residue]).append('D');
+            }
+            if (residue < residues.length()) {
+                matches++;
+            }
+        }
+        if (matches > 0) {
+            cigar.append(matches).append('M');
+        }
+        return cigar.toString();
+    }
+
+    /**
+     * The sequence with the gaps written as <code>-</code>.
+     *
+     * @return The sequence.
+     */
+    @Override
+    public String toString() {
+        if (materialized == null) {
+            char[] sequence = new char[length()];
+            int position = 0;
+            for (int residue = 0; residue < gaps.length; residue++) {
+                for (int i = 0; i < gaps[residue]; i++) {
+                    sequence[position++] = GAP;
+                }
+                if (residue < residues.length()) {
+                    sequence[position++] = residues.charAt(residue);
+                }
+            }
+            materialized = new String(sequence);
+        }
+        return materialized;
+    }
+}
@@ -0,0 +1,60 @@
+package de.sybig.uniprotFetcher;
+
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+
+/**
+ * Imports UniProt RDF dumps into the data directory:
+ * <code>java -jar uniprotFetcher.jar import config.yaml uniprot_sprot.rdf.gz</code>.
+ * Run it while the application is stopped.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class ImportCommand extends ConfiguredCommand<UniProtConfiguration> {
+
+    public ImportCommand() {
+        super("import", "Imports the entries of UniProt RDF dumps");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("dumps")
+                .nargs("+")
+                .help("the dump files, plain or gzip compressed");
+        subparser.addArgument("--threads")
+                .type(Integer.class)
+                .setDefault(Runtime.getRuntime().availableProcessors())
+                .help("the number of entries parsed and written in parallel");
+        subparser.addArgument("--checkpoint")
+                .help("the file recording the imported entries of each dump, default import.checkpoint in the data directory, the failed entries are listed in the same file with .failed appended");
+    }
+
+    @Override
+    protected void run(Bootstrap<UniProtConfiguration> bootstrap, Namespace namespace,
+            UniProtConfiguration configuration) throws Exception {
+        String checkpoint = namespace.getString("checkpoint");
+        Path checkpointFile = checkpoint == null
+                ? Paths.get(configuration.getDataDir(), "import.checkpoint") : Paths.get(checkpoint);
+        RdfStore rdfStore = new RdfStore(configuration);
+        QualityIndex qualityIndex = configuration.getQualityIndexFile() == null
+                ? new QualityIndex() : new QualityIndex(Paths.get(configuration.getQualityIndexFile()));
+        try {
+            DumpImporter importer = new DumpImporter(configuration, rdfStore, qualityIndex,
+                    namespace.getInt("threads"), checkpointFile);
+            List<String> dumps = namespace.getList("dumps");
+            for (String dump : dumps) {
+                long imported = importer.run(Paths.get(dump));
+                System.out.printf("Imported %d entries from %s%n", imported, dump);
+            }
+        } finally {
+            qualityIndex.stop();
+            rdfStore.stop();
+        }
+    }
+}
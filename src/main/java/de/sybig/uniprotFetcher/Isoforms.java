@@ -1,118 +1,348 @@
 package de.sybig.uniprotFetcher;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.lifecycle.Managed;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-import org.apache.commons.io.FileUtils;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.stream.XMLStreamException;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 /**
+ * The resources of the service. Each resource method is timed by the
+ * <code>@Timed</code> annotation, the phases of a request are timed
+ * separately: reading a snapshot, parsing the RDF file, aligning the
+ * isoforms and writing the SVG. Together with the timers of the
+ * {@link RdfStore} they show where the time of a slow request goes.
+ *
+ * The thread pools of the resources are shut down when the application
+ * stops.
  *
  * @author juergen.doenitz@bioinf.med.uni-goettingen.de
  */
 @javax.ws.rs.Path("/")
 @Produces(MediaType.APPLICATION_JSON)
-public class Isoforms {
+public class Isoforms implements Managed {
 
     private static final Logger logger = LoggerFactory.getLogger(Isoforms.class);
     private final UniProtConfiguration configuration;
-    private static final int SVG_LINE_HEIGHT = 25;
+    private static final int SVG_WIDTH = 1000;
+    private static final Pattern COLOR_PATTERN = Pattern.compile("^#[0-9A-Fa-f]{6}$");
+    private static final String NDJSON = "application/x-ndjson";
+    /**
+     * The media type of the alignment with the gaps run-length encoded.
+     */
+    static final String COMPACT_ALIGNMENT = "application/x-cigar+json";
+    private static final ObjectMapper BATCH_MAPPER = Jackson.newObjectMapper();
+    /**
+     * The number of replacements followed from a requested entry, like in
+     * the quality index.
+     */
+    private static final int MAX_REPLACEMENTS = 10;
 //    private Document document;
 
-    Isoforms(UniProtConfiguration configuration) {
+    private final RdfStore rdfStore;
+    private final QualityIndex qualityIndex;
+    private final Cache<String, List<Isoform>> isoformCache;
+    private final Cache<String, List<AlignedSequence>> alignmentCache;
+    private final Cache<String, byte[]> svgCache;
+    private final ExecutorService bestExecutor;
+    private final ExecutorService batchExecutor;
+    private final Aligner aligner;
+    private final Timer snapshotTimer;
+    private final Timer parseTimer;
+    private final Timer alignTimer;
+    private final Timer svgTimer;
+    private final Counter replacedBy;
+    /**
+     * The entries parsed after a fetch, until the request waiting for the
+     * fetch takes them, so it does not parse the fetched file again.
+     */
+    private final Cache<String, UniProtEntry> fetchedEntries = CacheBuilder.newBuilder()
+            .maximumSize(100)
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .build();
+
+    Isoforms(UniProtConfiguration configuration) throws IOException {
+        this(configuration, new RdfStore(configuration), new QualityIndex(), new MetricRegistry());
+    }
+
+    Isoforms(UniProtConfiguration configuration, RdfStore rdfStore, QualityIndex qualityIndex, MetricRegistry metrics) {
         this.configuration = configuration;
+        this.rdfStore = rdfStore;
+        this.qualityIndex = qualityIndex;
+        isoformCache = CacheBuilder.newBuilder()
+                .maximumSize(configuration.getIsoformCacheSize())
+                .expireAfterWrite(configuration.getIsoformCacheExpiry().toMilliseconds(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        alignmentCache = CacheBuilder.newBuilder()
+                .maximumSize(configuration.getAlignmentCacheSize())
+                .recordStats()
+                .build();
+        svgCache = CacheBuilder.newBuilder()
+                .maximumSize(configuration.getSvgCacheSize())
+                .recordStats()
+                .build();
+        registerCacheMetrics(metrics, "isoformCache", isoformCache);
+        registerCacheMetrics(metrics, "alignmentCache", alignmentCache);
+        registerCacheMetrics(metrics, "svgCache", svgCache);
+        snapshotTimer = metrics.timer(MetricRegistry.name(Isoforms.class, "snapshot"));
+        parseTimer = metrics.timer(MetricRegistry.name(Isoforms.class, "parse"));
+        alignTimer = metrics.timer(MetricRegistry.name(Isoforms.class, "align"));
+        svgTimer = metrics.timer(MetricRegistry.name(Isoforms.class, "svg"));
+        replacedBy = metrics.counter(MetricRegistry.name(Isoforms.class, "replacedBy"));
+        rdfStore.addFetchListener(isoformCache::invalidate);
+        rdfStore.addFetchListener(this::entryFetched);
+        bestExecutor = Executors.newFixedThreadPool(configuration.getBestThreads(),
+                new ThreadFactoryBuilder().setNameFormat("best-%d").setDaemon(true).build());
+        batchExecutor = Executors.newFixedThreadPool(configuration.getBatchThreads(),
+                new ThreadFactoryBuilder().setNameFormat("batch-%d").setDaemon(true).build());
+        aligner = new Aligner(configuration.getAlignmentThreads());
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        bestExecutor.shutdownNow();
+        batchExecutor.shutdownNow();
+        aligner.shutdown();
+        bestExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        batchExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Publishes the hit and miss counts of a cache in the metrics of the admin
+     * connector.
+     */
+    private void registerCacheMetrics(MetricRegistry metrics, String name, final Cache<?, ?> cache) {
+        metrics.register(MetricRegistry.name(Isoforms.class, name, "hits"), (Gauge<Long>) () -> cache.stats().hitCount());
+        metrics.register(MetricRegistry.name(Isoforms.class, name, "misses"), (Gauge<Long>) () -> cache.stats().missCount());
+        metrics.register(MetricRegistry.name(Isoforms.class, name, "size"), (Gauge<Long>) () -> cache.size());
     }
 
     @GET
+    @Timed
     @javax.ws.rs.Path("/isoforms/{uniprotID}")
-    public List<Isoform> getIsoforms(@PathParam(value = "uniprotID") String uniprotID) throws IOException, ParserConfigurationException, SAXException, XPathExpressionException {
-        Document doc = getDocument(uniprotID);
-        List<Isoform> isoforms = new LinkedList<>();
-        isoforms.add(getCanonicalSequence(doc));
-        isoforms.addAll(getModifiedSequences(doc));
+    public List<Isoform> getIsoforms(@PathParam(value = "uniprotID") String uniprotID) throws IOException, XMLStreamException {
+        List<Isoform> isoforms = isoformCache.getIfPresent(uniprotID);
+        if (isoforms != null) {
+            return isoforms;
+        }
+        UniProtEntry entry = getEntry(uniprotID);
+        isoforms = new ArrayList<>(entry.getModifiedSequences().size() + 1);
+        isoforms.add(entry.getCanonicalSequence());
+        isoforms.addAll(entry.getModifiedSequences());
         logger.trace("Got {} isoforms for {}", isoforms.size(), uniprotID);
+        isoforms = Collections.unmodifiableList(isoforms);
+        isoformCache.put(uniprotID, isoforms);
         return isoforms;
     }
 
+    /**
+     * Gets the isoforms of several entries, see {@link #postBatch(String)}.
+     *
+     * @param ids The IDs, as repeated parameter or separated by commas.
+     * @return One line of JSON per entry.
+     */
     @GET
-    @javax.ws.rs.Path("/isoforms/alignmentPos/{uniprotID}")
-    public List<AlignedSequence> getAlignmentPos(@PathParam(value = "uniprotID") String uniprotID) throws IOException, ParserConfigurationException, SAXException, XPathExpressionException {
-        List<Isoform> isoforms = getIsoforms(uniprotID);
-        ArrayList<AlignedSequence> sequences = new ArrayList<>();
-        // Init all sequence objects with the sequence as single feature
-        for (Isoform isoform : isoforms) {
-            sequences.add(new AlignedSequence(isoform.getSequence(), isoform));
+    @Timed
+    @javax.ws.rs.Path("/isoforms/batch")
+    @Produces(NDJSON)
+    public StreamingOutput getBatch(@QueryParam("ids") List<String> ids) {
+        List<String> parsed = new ArrayList<>();
+        for (String value : ids) {
+            parsed.addAll(Warmup.parseIds(value));
         }
-        for (Isoform isoform : isoforms) {
-            if (isoform.getModifications() == null) {
-                continue;
-            }
-            for (Modification m : isoform.getModifications()) {
-                for (AlignedSequence as : sequences) {
-                    logger.trace("Applying modification '{}' to sequence {}", m, as.getId());
-                    as.applyModification(m, isoform, sequences);  // the current modification and the parent isoform
+        return batch(parsed);
+    }
+
+    /**
+     * Gets the isoforms of several entries. The entries are read in parallel
+     * and each is written as a line of JSON as soon as it is read, so the
+     * lines are not in the order of the IDs. An entry that could not be read
+     * gets a line with an error instead of the isoforms.
+     *
+     * @param body The IDs, separated by new lines, commas or white space.
+     * @return One line of JSON per entry.
+     */
+    @POST
+    @Timed
+    @javax.ws.rs.Path("/isoforms/batch")
+    @Consumes(MediaType.TEXT_PLAIN)
+    @Produces(NDJSON)
+    public StreamingOutput postBatch(String body) {
+        return batch(Warmup.parseIds(body));
+    }
+
+    @POST
+    @Timed
+    @javax.ws.rs.Path("/isoforms/batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(NDJSON)
+    public StreamingOutput postBatchJson(List<String> ids) {
+        return batch(ids);
+    }
+
+    /**
+     * Reads the entries with at most twice <code>batchThreads</code> entries
+     * in progress, so the memory of a request does not grow with the number
+     * of IDs. The remaining entries are cancelled if the client goes away.
+     */
+    private StreamingOutput batch(List<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            throw new WebApplicationException("No IDs given", Response.Status.BAD_REQUEST);
+        }
+        int window = configuration.getBatchThreads() * 2;
+        return out -> {
+            CompletionService<BatchResult> completion = new ExecutorCompletionService<>(batchExecutor);
+            Set<Future<BatchResult>> running = new HashSet<>();
+            Iterator<String> next = ids.iterator();
+            try {
+                while (next.hasNext() && running.size() < window) {
+                    String id = next.next();
+                    running.add(completion.submit(() -> readBatchEntry(id)));
+                }
+                while (!running.isEmpty()) {
+                    Future<BatchResult> done = completion.take();
+                    running.remove(done);
+                    if (next.hasNext()) {
+                        String id = next.next();
+                        running.add(completion.submit(() -> readBatchEntry(id)));
+                    }
+                    out.write(BATCH_MAPPER.writeValueAsBytes(done.get()));
+                    out.write('\n');
+                    out.flush();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading batch");
+            } catch (ExecutionException ex) {
+                throw new IOException(ex.getCause());
+            } finally {
+                for (Future<BatchResult> future : running) {
+                    future.cancel(true);
                 }
-//                break;
             }
+        };
+    }
+
+    private BatchResult readBatchEntry(String id) {
+        try {
+            return new BatchResult(id, getIsoforms(id), null);
+        } catch (IOException | XMLStreamException | RuntimeException ex) {
+            logger.warn("Could not read {} of batch: {}", id, ex.toString());
+            return new BatchResult(id, null, ex.toString());
+        }
+    }
+
+    @GET
+    @Timed
+    @javax.ws.rs.Path("/isoforms/alignmentPos/{uniprotID}")
+    public List<AlignedSequence> getAlignmentPos(@PathParam(value = "uniprotID") String uniprotID) throws IOException, XMLStreamException {
+        // the modification time is part of the key, so a refetched file is aligned again
+        FileTime lastModified = rdfStore.getLastModified(uniprotID);
+        String key = uniprotID + "@" + lastModified.toMillis();
+        List<AlignedSequence> alignment = alignmentCache.getIfPresent(key);
+        if (alignment != null) {
+            return alignment;
+        }
+        List<Isoform> isoforms = getIsoforms(uniprotID);
+        try (Timer.Context context = alignTimer.time()) {
+            alignment = Collections.unmodifiableList(aligner.align(isoforms));
+        }
+        alignmentCache.put(key, alignment);
+        return alignment;
+    }
+
+    /**
+     * Gets the alignment with the gaps of each sequence as run-length encoded
+     * operations, without the sequences with the gaps. Selected with the
+     * <code>Accept</code> header or with <code>?format=compact</code>, the
+     * sequences with the gaps stay the default.
+     */
+    @GET
+    @Timed
+    @javax.ws.rs.Path("/isoforms/alignmentPos/{uniprotID}")
+    @Produces(COMPACT_ALIGNMENT + ";qs=0.5")
+    public List<CompactAlignedSequence> getCompactAlignment(@PathParam(value = "uniprotID") String uniprotID) throws IOException, XMLStreamException {
+        List<AlignedSequence> alignment = getAlignmentPos(uniprotID);
+        List<CompactAlignedSequence> compact = new ArrayList<>(alignment.size());
+        for (AlignedSequence sequence : alignment) {
+            compact.add(new CompactAlignedSequence(sequence));
         }
-        return sequences;
+        return compact;
     }
 
     @GET
+    @Timed
     @javax.ws.rs.Path("/isoforms/svg/{uniprotID}/{sequence}")
     @Produces("image/svg+xml")
-    public String getSVGWithSequence(
+    public Response getSVGWithSequence(
             @PathParam(value = "uniprotID") String uniprotID,
             @PathParam(value = "sequence") String sequence,
-            @QueryParam("color") String color)
-            throws IOException, ParserConfigurationException, SAXException, XPathExpressionException {
-
-        int width = 1000;
-        List<AlignedSequence> alignment = getAlignmentPos(uniprotID);
+            @QueryParam("color") String color,
+            @Context Request request)
+            throws IOException, XMLStreamException {
 
-        StringBuilder svg = new StringBuilder();
-        svg = addSVGStart(svg, width, alignment.size());
-        addDBD(svg, sequence, alignment, width, validateColor("#" + color));
-        svg = addAlignmentsToSVG(svg, alignment, width);
-        svg = addSVGEnd(svg);
-        return svg.toString();
+        return getSVGResponse(request, uniprotID, sequence, validateColor("#" + color), SVG_WIDTH);
     }
 
     private String validateColor(String color) {
         if (color == null) {
             color = "#AAAAAA";
         }
-        Pattern pattern = Pattern.compile("^#[0-9A-Fa-f]{6}$");
-        Matcher matcher = pattern.matcher(color);
+        Matcher matcher = COLOR_PATTERN.matcher(color);
         if (!matcher.find()) {
             color = "#AAAAAA";
         }
@@ -120,409 +350,196 @@ public class Isoforms {
     }
 
     @GET
+    @Timed
     @javax.ws.rs.Path("/isoforms/svg/{uniprotID}")
     @Produces("image/svg+xml")
-    public String getSVG(@PathParam(value = "uniprotID") String uniprotID) throws IOException, ParserConfigurationException, SAXException, XPathExpressionException {
-        int width = 1000;
-        List<AlignedSequence> alignment = getAlignmentPos(uniprotID);
+    public Response getSVG(@PathParam(value = "uniprotID") String uniprotID,
+            @Context Request request) throws IOException, XMLStreamException {
+
+        return getSVGResponse(request, uniprotID, null, null, SVG_WIDTH);
+    }
 
-//        System.out.println("aa size " + aaSize);
-        StringBuilder svg = new StringBuilder();
-        svg = addSVGStart(svg, width, alignment.size());
-        svg = addAlignmentsToSVG(svg, alignment, width);
-        svg = addSVGEnd(svg);
-        return svg.toString();
+    /**
+     * Creates the response for a SVG of the alignment. The SVG only depends
+     * on the parameters and the RDF file of the entry, the ETag and the last
+     * modified date are therefore taken from them. If the client has the
+     * current version, a "304 Not Modified" is returned without rendering the
+     * SVG.
+     *
+     * @param request The request to evaluate the preconditions.
+     * @param uniprotID The ID of the entry.
+     * @param sequence The sequence of the DNA binding domain to mark, or
+     * <code>null</code>.
+     * @param color The validated color of the DNA binding domain.
+     * @param width The width of the SVG.
+     */
+    private Response getSVGResponse(Request request, String uniprotID, String sequence, String color, int width) throws IOException, XMLStreamException {
+        FileTime lastModified = rdfStore.getLastModified(uniprotID);
+        String key = uniprotID + "|" + sequence + "|" + color + "|" + width + "|" + lastModified.toMillis();
+        EntityTag etag = new EntityTag(Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).toString());
+        Date lastModifiedDate = new Date(lastModified.toMillis());
+
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(lastModifiedDate, etag);
+        if (notModified != null) {
+            return notModified.build();
+        }
 
+        byte[] svg = svgCache.getIfPresent(key);
+        if (svg != null) {
+            return Response.ok(svg).tag(etag).lastModified(lastModifiedDate).build();
+        }
+        // the alignment is read before the response is started, so errors get a proper status
+        List<AlignedSequence> alignment = getAlignmentPos(uniprotID);
+        StreamingOutput output = out -> {
+            ByteArrayOutputStream copy = new ByteArrayOutputStream(16 * 1024);
+            // includes sending the SVG, it is written while it is built
+            try (Timer.Context context = svgTimer.time()) {
+                new SvgWriter(new TeeOutputStream(out, copy)).write(alignment, sequence, color, width);
+            }
+            svgCache.put(key, copy.toByteArray());
+        };
+        return Response.ok(output).tag(etag).lastModified(lastModifiedDate).build();
     }
 
     @GET
+    @Timed
     @javax.ws.rs.Path("/best/{uniprotIDs}")
     @Produces(MediaType.TEXT_PLAIN)
-    public String selectBest(@PathParam(value = "uniprotIDs") String uniprotIDs) throws IOException, SAXException, ParserConfigurationException, XPathExpressionException {
-
-        List<UniProtQuality> items = new LinkedList<>();
-        XPathFactory xPathfactory = XPathFactory.newInstance();
-
-        for (String id : uniprotIDs.split(",")) {
-            UniProtQuality prot = new UniProtQuality();
-            prot.setId(id);
-
-            Document doc = getDocument(id);
-
-            XPath xpath = xPathfactory.newXPath();
-            XPathExpression expr = xpath.compile("/RDF/Description/reviewed");
-            Node reviewedNode = (Node) expr.evaluate(doc, XPathConstants.NODE);
-            if (reviewedNode == null || reviewedNode.getTextContent().equals("false")) {
-                prot.setReviewed(false);
-            } else {
-                prot.setReviewed(true);
-            }
-
-            xpath = xPathfactory.newXPath();
-            expr = xpath.compile("/RDF/Description/obsolete");
-            Node obsoleteNode = (Node) expr.evaluate(doc, XPathConstants.NODE);
-            if (obsoleteNode == null || reviewedNode.getTextContent().equals("false")) {
-                prot.setObsolete(false);
+    public String selectBest(@PathParam(value = "uniprotIDs") String uniprotIDs) throws IOException, XMLStreamException {
+
+        // entries in the quality index need no RDF file, the others are read in parallel;
+        // old files of indexed entries are refreshed, which updates the index
+        String[] ids = uniprotIDs.split(",");
+        UniProtQuality[] qualities = new UniProtQuality[ids.length];
+        List<Integer> missing = new ArrayList<>();
+        List<Callable<UniProtQuality>> tasks = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            qualities[i] = qualityIndex.get(ids[i]);
+            if (qualities[i] != null) {
+                rdfStore.refreshIfOld(ids[i]);
             } else {
-                prot.setObsolete(true);
-            }
-
-            xpath = xPathfactory.newXPath();
-            expr = xpath.compile("/RDF/Description/existence");
-            Node evidenceNode = (Node) expr.evaluate(doc, XPathConstants.NODE);
-            if (evidenceNode != null) {
-//                System.out.println("node " + evidenceNode);
-//                System.out.println("atts " + evidenceNode.getAttributes());
-//                System.out.println("res " + evidenceNode.getAttributes().getNamedItem("rdf:resource"));
-                prot.setLevel(evidenceNode.getAttributes().getNamedItem("rdf:resource").getNodeValue());
-            }
-            items.add(prot);
-        }
-        items.sort(new UniprotQualityComparator());
-        System.out.println("sorted list " + items);
-        return items.get(0).getId();
-
-    }
-
-    private StringBuilder addSVGStart(StringBuilder svg, int width, int lines) {
-        svg.append(String.format("<svg width=\"%d\" height=\"%d\" xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" onload=\"init(evt)\">\n", width, (lines * SVG_LINE_HEIGHT +30) ));
-        svg.append("<script type=\"text/ecmascript\">\n"
-                + "<![CDATA[\n"
-                + "  function init(evt)\n"
-                + "  {\n"
-                + "    if ( window.svgDocument == null )\n"
-                + "    {\n"
-                + "      svgDocument = evt.target.ownerDocument;\n"
-                + "    }\n"
-                + "    tooltip = svgDocument.getElementById('tooltip');\n"
-                + "  }\n"
-                + "function ShowTooltip(evt, mouseovertext)\n"
-                + "{\n"
-                + "  tooltip.setAttributeNS(null,\"x\",11);\n"
-                + "  tooltip.setAttributeNS(null,\"y\",evt.clientY+27);\n"
-                + "  tooltip.firstChild.data = mouseovertext;\n"
-                + "  tooltip.setAttributeNS(null,\"visibility\",\"visible\");\n"
-                + "}\n"
-                + "\n"
-                + "function HideTooltip()\n"
-                + "{\n"
-                + "  tooltip.setAttributeNS(null,\"visibility\",\"hidden\");\n"
-                + "}"
-                + "]]></script>");
-        return svg;
-    }
-
-    private StringBuilder addAlignmentsToSVG(StringBuilder svg, List<AlignedSequence> alignment, int width) {
-        int ypos = 10;
-        double aaSize = ((double) width) / (getMaxSequenceLength(alignment));
-        for (AlignedSequence sequence : alignment) {
-            svg.append(String.format("<g>\n"
-                    + "  <rect x = \"5\" y = \"%d\" width = \"%d\" height = \"20\" stroke = \"none\" fill = \"#FFCC62\"/>\n",
-                    ypos, (int) (aaSize * sequence.getSequence().length())
-            ));
-            
-            for (SequenceFeature feature : sequence.getFeatures()) {
-                String color = null;
-                if ("gap".equals(feature.getType())) {
-                    color = "EEEEEE";
-                } else if ("mismatch".equals(feature.getType())) {
-                    color = "FFAAAA";
-                } else if ("gapD".equals(feature.getType())) {
-                    color = "EEEEEE";
-                } else if ("gapI".equals(feature.getType())) {
-                    color = "EEEEEE";
-                }
-
-                if (color == null) {
-                    continue;
-                }
-                String tooltip = String.format("%s: %d - %d (%d)", feature.getType(), feature.getStart()-feature.getMovedStart(), 
-                        feature.getEnd() - feature.getMovedStart(), feature.getLength());
-                svg.append(String.format("  <rect x = \"%d\" y = \"%d\" width = \"%d\" height = \"18\" "
-                        + "stroke = \"none\" fill = \"#%s\" "
-                        + "onmousemove=\"ShowTooltip(evt, '%s')\"\n"
-                        + "    onmouseout=\"HideTooltip()\" /> \n",
-                        (int) (feature.getStart() * aaSize + 5),
-                        ypos + 1, (int) (aaSize * (feature.getLength())), color,
-                        tooltip));
+                String id = ids[i];
+                missing.add(i);
+                tasks.add(() -> getQuality(id));
             }
-            svg.append(String.format("  <text x=\"%d\" y=\"%d\" font-family=\"Verdana\" font-size=\"10\" fill=\"blue\">%s</text>\n</g>\n\n",
-                    width - 60, ypos + 15, sequence.getId()));
-            ypos += SVG_LINE_HEIGHT;
-        }
-        return svg;
-
-    }
-
-    private StringBuilder addDBD(StringBuilder svg, String sequence, List<AlignedSequence> alignment, int width, String color) {
-        String canonicalSequence = alignment.get(0).getSequence();
-        String origSequence = canonicalSequence.replace("-", "");
-        double aaSize = ((double) width) / (getMaxSequenceLength(alignment));
-
-        int start = origSequence.indexOf(sequence);
-        if (start < 0) {
-            logger.error("Could not find DBD for {}", alignment.get(0).getId());
-            return svg;
         }
-        for (int pos = 0; pos < start; pos++) {
-            if ("-".equals(canonicalSequence.charAt(pos))) {
-                start++;
-            }
+        List<Future<UniProtQuality>> results;
+        try {
+            results = tasks.isEmpty() ? Collections.emptyList()
+                    : bestExecutor.invokeAll(tasks, configuration.getBestTimeout().toMilliseconds(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while selecting best of " + uniprotIDs);
         }
-        int end = start + sequence.length();
-        //System.out.println("moved start " + start + " " + end);
-        for (int pos = start; pos < end; pos++) {
-            if ("-".equals(canonicalSequence.charAt(pos))) {
-                end++;
+        for (int i = 0; i < results.size(); i++) {
+            String id = ids[missing.get(i)];
+            try {
+                qualities[missing.get(i)] = results.get(i).get();
+            } catch (CancellationException ex) {
+                logger.warn("Quality of {} not available in {}", id, configuration.getBestTimeout());
+            } catch (ExecutionException ex) {
+                logger.warn("Could not get quality for {}: {}", id, ex.getCause().toString());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while selecting best of " + uniprotIDs);
             }
         }
-        int height = 25 * alignment.size() + 20;
-        svg.append(String.format("  <rect x = \"%d\" y = \"%d\" width = \"%d\" height = \"%d\" stroke = \"none\" fill = \"%s\"/>\n",
-                (int) (aaSize * start), 0, (int) (aaSize * end - start), height, color));
-
-        logger.debug("   found at " + start + " --- " + end);
-        return svg;
-    }
-
-    private StringBuilder addSVGEnd(StringBuilder svg) {
-        svg.append("<text class=\"tooltip\" id=\"tooltip\"\n"
-                + "      x=\"0\" y=\"0\" visibility=\"hidden\">Tooltip</text>\n");
-        svg.append("</svg>");
-        return svg;
-    }
 
-    private int getMaxSequenceLength(List<AlignedSequence> alignment) {
-        int maxLength = 0;
-        for (AlignedSequence sequence : alignment) {
-            maxLength = sequence.getSequence().length() > maxLength ? sequence.getSequence().length() : maxLength;
+        // the qualities are in the order of the IDs, so the sorting keeps the order of equal entries
+        List<UniProtQuality> items = new ArrayList<>();
+        for (UniProtQuality quality : qualities) {
+            if (quality != null) {
+                items.add(quality);
+            }
         }
-        return maxLength;
-    }
-
-    private Document getDocument(String uniprotID) throws IOException, SAXException, ParserConfigurationException, XPathExpressionException {
-
-        Path rdfFile = getRDFfile(uniprotID);
-
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document document = builder.parse(rdfFile.toFile());
-
-        XPathFactory xPathfactory = XPathFactory.newInstance();
-        XPath xpath = xPathfactory.newXPath();
-        XPathExpression expr = xpath.compile("/RDF/Description/replacedBy");
-        Node replaceNode = (Node) expr.evaluate(document, XPathConstants.NODE);
-        if (replaceNode != null) {
-            String newID = replaceNode.getAttributes().getNamedItem("rdf:resource").getNodeValue();
-            newID = newID.substring(newID.lastIndexOf("/") + 1);
-            System.out.println(uniprotID + " replaced by " + newID);
-            return getDocument(newID);
+        if (items.isEmpty()) {
+            throw new WebApplicationException("No quality available for " + uniprotIDs, Response.Status.SERVICE_UNAVAILABLE);
         }
+        items.sort(new UniprotQualityComparator());
+        logger.debug("sorted list {}", items);
+        return items.get(0).getId();
 
-        return document;
     }
 
-    private Isoform getCanonicalSequence(Document doc) throws XPathExpressionException, IOException, SAXException, ParserConfigurationException {
-
-        XPathFactory xPathfactory = XPathFactory.newInstance();
-        XPath xpath = xPathfactory.newXPath();
-        XPathExpression expr = xpath.compile("/RDF/Description/type[@resource='http://purl.uniprot.org/core/Simple_Sequence']/parent::Description");
-        NodeList result = (NodeList) expr.evaluate(doc, XPathConstants.NODESET);
-        Isoform isoform = new Isoform();
-
-        if (result.getLength() > 0) {
-            Node descpriptionNode = result.item(0);
-
-            isoform = processSequenceNode(descpriptionNode, doc);
-        }
-        return isoform;
+    private UniProtQuality getQuality(String id) throws IOException, XMLStreamException {
+        UniProtQuality prot = new UniProtQuality(getEntry(id));
+        prot.setId(id);
+        prot.setReplacedBy(null);
+        return prot;
     }
 
-    private List<Isoform> getModifiedSequences(Document doc) throws XPathExpressionException, IOException, SAXException, ParserConfigurationException {
-        XPathFactory xPathfactory = XPathFactory.newInstance();
-        XPath xpath = xPathfactory.newXPath();
-        XPathExpression expr = xpath.compile("/RDF/Description/type[@resource='http://purl.uniprot.org/core/Modified_Sequence']/parent::Description");
-        NodeList modifiedSequences = (NodeList) expr.evaluate(doc, XPathConstants.NODESET);
-
-        List<Isoform> isoforms = new LinkedList<>();
-        for (int i = 0; i < modifiedSequences.getLength(); i++) {
-            Node isoformNode = modifiedSequences.item(i);
-            isoforms.add(processSequenceNode(isoformNode, doc));
+    /**
+     * Reads a fetched or refreshed file, to update its snapshot and its
+     * quality in the quality index. The parsed entry is kept for the request
+     * waiting for the fetch.
+     */
+    private void entryFetched(String uniprotID) {
+        try {
+            UniProtEntry entry = readRDF(uniprotID);
+            qualityIndex.put(entry);
+            fetchedEntries.put(uniprotID, entry);
+        } catch (IOException | XMLStreamException ex) {
+            logger.warn("Could not read quality of {}: {}", uniprotID, ex.toString());
         }
-        return isoforms;
     }
 
-    private Isoform processSequenceNode(Node descpriptionNode, Document doc) throws XPathExpressionException {
-        Isoform isoform = new Isoform();
-        String url = descpriptionNode.getAttributes().getNamedItem("rdf:about").getTextContent();
-        isoform.setUrl(url);
-        isoform.setId(url.substring(url.lastIndexOf("/") + 1));
-        NodeList children = descpriptionNode.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            Node child = children.item(i);
-            String name = child.getNodeName();
-            if ("rdf:value".equals(name)) {
-                isoform.setSequence(child.getTextContent());
-            } else if ("basedOn".equals(name)){
-                isoform.setBasedOn(child.getAttributes().getNamedItem("rdf:resource").getNodeValue().replace("http://purl.uniprot.org/isoforms/", ""));
-            } 
-            else if ("name".equals(name)) {
-                isoform.addName(child.getTextContent());
-            } else if ("modification".equals(name)) {
-                isoform.addModification(getModificationNode(child.getAttributes().getNamedItem("rdf:resource").getNodeValue(), doc));
-            }
-
+    private UniProtEntry readRDF(String uniprotID) throws IOException, XMLStreamException {
+        UniProtEntry entry;
+        try (InputStream in = rdfStore.openRDF(uniprotID);
+                Timer.Context context = parseTimer.time()) {
+            entry = new RdfEntryReader().read(in);
         }
-        return isoform;
-    }
-
-    private Modification getModificationNode(String uri, Document doc) throws XPathExpressionException {
-        Modification modification = new Modification();
-        XPathFactory xPathfactory = XPathFactory.newInstance();
-        XPath xpath = xPathfactory.newXPath();
-        XPathExpression expr = xpath.compile("/RDF/Description[@about='" + uri + "']");
-        Node node = (Node) expr.evaluate(doc, XPathConstants.NODE);
-        NodeList children = node.getChildNodes();
-        modification.setId(uri.substring(uri.lastIndexOf("/") + 1));
-        for (int i = 0; i < children.getLength(); i++) {
-            Node child = children.item(i);
-            if ("substitution".equals(child.getNodeName())) {
-                modification.setSubstitution(child.getTextContent());
-            } else if ("range".equals(child.getNodeName())) {
-                modification = getRange(modification, child.getAttributes().getNamedItem("rdf:resource").getNodeValue(), doc);
+        entry.setId(uniprotID);
+        if (configuration.isSnapshots()) {
+            try {
+                rdfStore.writeSnapshot(uniprotID, entry);
+            } catch (IOException ex) {
+                logger.warn("Could not write snapshot of {}: {}", uniprotID, ex.toString());
             }
         }
-        return modification;
+        return entry;
     }
 
-    private Modification getRange(Modification modification, String uri, Document doc) throws XPathExpressionException {
-
-        XPathFactory xPathfactory = XPathFactory.newInstance();
-        XPath xpath = xPathfactory.newXPath();
-        XPathExpression expr = xpath.compile("/RDF/Description[@about='" + uri + "']");
-        Node node = (Node) expr.evaluate(doc, XPathConstants.NODE);
-        if (node == null) {
-            System.out.println("no range found for " + uri);
-        }
-        NodeList children = node.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            Node child = children.item(i);
-            if ("faldo:begin".equals(child.getNodeName())) {
-                modification.setBegin(getPos(child.getAttributes().getNamedItem("rdf:resource").getNodeValue(), doc));
-            }
-            if ("faldo:end".equals(child.getNodeName())) {
-                modification.setEnd(getPos(child.getAttributes().getNamedItem("rdf:resource").getNodeValue(), doc));
+    /**
+     * Reads the entry with the given ID. If the entry was replaced by another
+     * one, the replacing entry is returned. A chain of more than
+     * {@link #MAX_REPLACEMENTS} replacements or a cycle is answered with 502,
+     * as the data of UniProt is broken.
+     */
+    private UniProtEntry getEntry(String uniprotID) throws IOException, XMLStreamException {
+        Set<String> visited = new HashSet<>();
+        String id = uniprotID;
+        UniProtEntry entry = readEntry(id);
+        while (entry.getReplacedBy() != null) {
+            visited.add(id);
+            logger.info("{} replaced by {}", id, entry.getReplacedBy());
+            replacedBy.inc();
+            id = entry.getReplacedBy();
+            if (visited.size() > MAX_REPLACEMENTS || visited.contains(id)) {
+                logger.warn("Too many replacements or a cycle of replacements for {}", uniprotID);
+                throw new WebApplicationException("Too many replacements for " + uniprotID, Response.Status.BAD_GATEWAY);
             }
+            entry = readEntry(id);
         }
-
-        return modification;
-    }
-
-    private int getPos(String uri, Document doc) throws XPathExpressionException {
-        XPathFactory xPathfactory = XPathFactory.newInstance();
-        XPath xpath = xPathfactory.newXPath();
-        XPathExpression expr = xpath.compile("/RDF/Description[@about='" + uri + "']/position");
-        Node node = (Node) expr.evaluate(doc, XPathConstants.NODE);
-        if (node == null) {
-            return 0;
-        }
-        return Integer.parseInt(node.getTextContent());
+        return entry;
     }
 
-    private Path getRDFfile(String id) throws MalformedURLException, IOException {
-
-        Path localFile = getLocalFile(id);
-
-        if (!Files.isReadable(localFile)) {
-            logger.debug("getting from uniprot {}", id);
-            FileUtils.copyURLToFile(new URL("http://www.uniprot.org/uniprot/" + id + ".rdf"),
-                    getLocalFile(id).toFile(), 10 * 1000, 10 * 1000); // 10 seconds connectionTimeout and 10 seconds readTimeout
-            return localFile;
-        }
-
-        FileTime validTime = FileTime.fromMillis(System.currentTimeMillis() - (1000 * 60 * 60 * 24 * new Long(90)));
-
-        if (Files.readAttributes(localFile, BasicFileAttributes.class).lastModifiedTime().compareTo(validTime) < 1) {
-            logger.info("File {} is to old, will be refetched from uniprot.", localFile);
-            try {
-                FileUtils.copyURLToFile(new URL("https://www.uniprot.org/uniprot/" + id + ".rdf"),
-                        getLocalFile(id).toFile(), 1500, 10 * 1000); // 1.5 seconds connectionTimeout and 10 seconds readTimeout
-            } catch (java.net.SocketTimeoutException ex) {
-                logger.warn("Could not re-fetch {} from Uniprot in max 1.5 secs, using old file.");
+    private UniProtEntry readEntry(String uniprotID) throws IOException, XMLStreamException {
+        FileTime lastModified = rdfStore.getLastModified(uniprotID);
+        // an entry fetched for this request was parsed and indexed by entryFetched
+        UniProtEntry entry = fetchedEntries.asMap().remove(uniprotID);
+        if (entry == null) {
+            if (configuration.isSnapshots()) {
+                try (Timer.Context context = snapshotTimer.time()) {
+                    entry = rdfStore.readSnapshot(uniprotID, lastModified);
+                }
             }
-            return localFile;
-        }
-
-        return localFile;
-    }
-
-    private Path getLocalFile(String id) {
-        Path file = Paths.get(configuration.getDataDir(), id + ".rdf");
-        return file;
-    }
-
-
-
-    class UniProtQuality {
-
-        private String id;
-        private boolean obsolete = false;
-        private boolean reviewed = false;
-        private int level = 0;
-
-        public String getId() {
-            return id;
-        }
-
-        public void setId(String id) {
-            this.id = id;
-        }
-
-        public boolean isObsolete() {
-            return obsolete;
-        }
-
-        public void setObsolete(boolean obsolete) {
-            this.obsolete = obsolete;
-        }
-
-        public boolean isReviewed() {
-            return reviewed;
-        }
-
-        public void setReviewed(boolean reviewed) {
-            this.reviewed = reviewed;
-        }
-
-        public int getLevel() {
-            return level;
-        }
-
-        public void setLevel(int level) {
-            this.level = level;
-        }
-
-        public void setLevel(String level) {
-            if ("http://purl.uniprot.org/core/Evidence_at_Protein_Level_Existence".equals(level)) {
-                this.level = 1;
-            } else if ("http://purl.uniprot.org/core/Evidence_at_Transcript_Level_Existence".equals(level)) {
-                this.level = 2;
-            } else if ("http://purl.uniprot.org/core/Inferred_from_Homology_Existence".equals(level)) {
-                this.level = 3;
-            } else if ("http://purl.uniprot.org/core/Predicted_Existence".equals(level)) {
-                this.level = 4;
-            } else {
-                System.out.println("level not found " + level);
+            if (entry == null) {
+                entry = readRDF(uniprotID);
             }
+            qualityIndex.put(entry);
         }
-
-        public String toString() {
-            return String.format("%s {%b %d}", id, reviewed, level);
-        }
-        //1. Experimental evidence at protein level   <existence rdf:resource="http://purl.uniprot.org/core/Evidence_at_Protein_Level_Existence"/>
-//2. Experimental evidence at transcript level    <existence rdf:resource="http://purl.uniprot.org/core/Evidence_at_Transcript_Level_Existence"/>
-//3. Protein inferred from homology  http://purl.uniprot.org/core/Inferred_from_Homology_Existence
-//4. Protein predicted http://purl.uniprot.org/core/Predicted_Existence
-//5. Protein uncertain
+        return entry;
     }
 
     class UniprotQualityComparator implements Comparator<UniProtQuality> {
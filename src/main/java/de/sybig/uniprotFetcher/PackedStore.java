@@ -0,0 +1,407 @@
+package de.sybig.uniprotFetcher;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores many small files in a few append-only segment files, to avoid a file
+ * system entry and an open/close per file.
+ *
+ * Each record of a segment consists of a header (magic number, modification
+ * time, length of the key, key, length of the data) followed by the data. A
+ * new version of a file is appended as a new record, the old record stays in
+ * the segment until the store is compacted. The offsets of the current
+ * records are kept in memory and rebuilt from the segment headers when the
+ * store is opened. Files are read through a read-only memory mapping of the
+ * segment, without copying the data. Files appended after the segment was
+ * mapped are read from the segment file until the mapping is renewed.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class PackedStore implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PackedStore.class);
+
+    static final int RECORD_MAGIC = 0x55505052; // "UPPR"
+    private static final int HEADER_SIZE = 4 + 8 + 4 + 4; // magic, time, key length, data length
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".pack";
+    /**
+     * A segment is mapped as a whole, which is limited to 2 GB.
+     */
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private Segment activeSegment;
+
+    /**
+     * Opens the store in the given directory and reads the headers of its
+     * segments.
+     *
+     * @param directory The directory of the segment files.
+     * @param segmentSize The size after which a new segment is started.
+     * @throws IOException If the segments could not be read.
+     */
+    public PackedStore(Path directory, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = Math.min(segmentSize, MAX_SEGMENT_SIZE);
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(Comparator.comparing(Path::toString));
+        for (Path file : files) {
+            Segment segment = new Segment(file, segmentNumber(file));
+            segments.add(segment);
+            scan(segment);
+        }
+        logger.info("Opened packed store {} with {} files in {} segments", directory, index.size(), segments.size());
+    }
+
+    /**
+     * Gets the modification time of a file.
+     *
+     * @param key The name of the file.
+     * @return The modification time, or <code>null</code> if the file is not
+     * in the store.
+     */
+    public FileTime getLastModified(String key) {
+        Location location = index.get(key);
+        return location == null ? null : FileTime.fromMillis(location.timestamp);
+    }
+
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Gets the content of a file as read-only buffer of the mapped segment.
+     *
+     * @param key The name of the file.
+     * @return The content, or <code>null</code> if the file is not in the
+     * store.
+     * @throws IOException If the segment could not be mapped.
+     */
+    public ByteBuffer get(String key) throws IOException {
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        return location.segment.slice(location.offset, location.length);
+    }
+
+    /**
+     * Opens a stream of the content of a file.
+     *
+     * @param key The name of the file.
+     * @return The stream, or <code>null</code> if the file is not in the
+     * store.
+     * @throws IOException If the segment could not be mapped.
+     */
+    public InputStream open(String key) throws IOException {
+        ByteBuffer buffer = get(key);
+        return buffer == null ? null : new ByteBufferInputStream(buffer);
+    }
+
+    /**
+     * Adds a file to the store, replacing an older version of the file.
+     *
+     * @param key The name of the file.
+     * @param data The content of the file.
+     * @param lastModified The modification time of the file.
+     * @throws IOException If the file could not be written.
+     */
+    public synchronized void put(String key, ByteBuffer data, FileTime lastModified) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = data.remaining();
+        long recordSize = HEADER_SIZE + keyBytes.length + length;
+        if (activeSegment == null || (activeSegment.size > 0 && activeSegment.size + recordSize > segmentSize)) {
+            startSegment();
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length);
+        header.putInt(RECORD_MAGIC);
+        header.putLong(lastModified.toMillis());
+        header.putInt(keyBytes.length);
+        header.put(keyBytes);
+        header.putInt(length);
+        header.flip();
+
+        FileChannel channel = activeSegment.writeChannel();
+        long offset = activeSegment.size;
+        channel.position(offset);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        ByteBuffer content = data.duplicate();
+        while (content.hasRemaining()) {
+            channel.write(content);
+        }
+        activeSegment.size = offset + recordSize;
+        index.put(key, new Location(activeSegment, offset + HEADER_SIZE + keyBytes.length, length, lastModified.toMillis()));
+    }
+
+    /**
+     * Copies the current version of all files into new segments and deletes
+     * the old segments, to reclaim the space of replaced versions.
+     *
+     * @return The number of bytes reclaimed.
+     * @throws IOException If the store could not be compacted.
+     */
+    public synchronized long compact() throws IOException {
+        List<Segment> oldSegments = new ArrayList<>(segments);
+        long oldSize = size();
+        List<Map.Entry<String, Location>> live = new ArrayList<>(index.entrySet());
+        // copy in the order of the old segments, so they are read sequentially
+        live.sort(Comparator.comparingInt((Map.Entry<String, Location> e) -> e.getValue().segment.number)
+                .thenComparingLong(e -> e.getValue().offset));
+        startSegment();
+        for (Map.Entry<String, Location> entry : live) {
+            Location location = entry.getValue();
+            put(entry.getKey(), location.segment.slice(location.offset, location.length), FileTime.fromMillis(location.timestamp));
+        }
+        for (Segment segment : oldSegments) {
+            segments.remove(segment);
+            segment.close();
+            Files.delete(segment.file);
+        }
+        long reclaimed = oldSize - size();
+        logger.info("Compacted {} files from {} segments, reclaimed {} bytes", live.size(), oldSegments.size(), reclaimed);
+        return reclaimed;
+    }
+
+    /**
+     * The size of all segments in bytes.
+     *
+     * @return The size of the store.
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    public int fileCount() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+    }
+
+    private void startSegment() throws IOException {
+        int number = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).number + 1;
+        Path file = directory.resolve(String.format("%s%05d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        Files.createFile(file);
+        activeSegment = new Segment(file, number);
+        segments.add(activeSegment);
+    }
+
+    /**
+     * Reads the record headers of a segment into the index. An incomplete
+     * record at the end, left by a crash while writing, is cut off.
+     */
+    private void scan(Segment segment) throws IOException {
+        long fileSize = Files.size(segment.file);
+        ByteBuffer buffer = fileSize == 0 ? ByteBuffer.allocate(0) : segment.slice(0, (int) fileSize);
+        int position = 0;
+        while (position + HEADER_SIZE <= fileSize) {
+            buffer.position(position);
+            if (buffer.getInt() != RECORD_MAGIC) {
+                break;
+            }
+            long timestamp = buffer.getLong();
+            int keyLength = buffer.getInt();
+            if (keyLength < 0 || position + HEADER_SIZE + keyLength > fileSize) {
+                break;
+            }
+            byte[] key = new byte[keyLength];
+            buffer.get(key);
+            int length = buffer.getInt();
+            int offset = buffer.position();
+            if (length < 0 || offset + (long) length > fileSize) {
+                break;
+            }
+            // later records replace earlier ones
+            index.put(new String(key, StandardCharsets.UTF_8), new Location(segment, offset, length, timestamp));
+            position = offset + length;
+        }
+        segment.size = position;
+        if (position < fileSize) {
+            logger.warn("Cutting incomplete record at {} of {}", position, segment.file);
+            try (FileChannel channel = FileChannel.open(segment.file, StandardOpenOption.WRITE)) {
+                channel.truncate(position);
+            }
+            segment.unmap();
+        }
+        activeSegment = segment;
+    }
+
+    private static int segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * The position of the data of a file in a segment.
+     */
+    private static class Location {
+
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+        private final long timestamp;
+
+        Location(Segment segment, long offset, int length, long timestamp) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * A segment file with its read-only mapping. Records appended after the
+     * mapping was made are read with positional reads, the mapping is renewed
+     * only after a window of new data, not on every read past its end.
+     */
+    private static class Segment {
+
+        private static final long REMAP_WINDOW = 16 * 1024 * 1024;
+
+        private final Path file;
+        private final int number;
+        private volatile long size;
+        private FileChannel readChannel;
+        private FileChannel writeChannel;
+        private MappedByteBuffer mapped;
+
+        Segment(Path file, int number) throws IOException {
+            this.file = file;
+            this.number = number;
+            this.size = Files.size(file);
+        }
+
+        ByteBuffer slice(long offset, int length) throws IOException {
+            FileChannel channel;
+            synchronized (this) {
+                if (mapped == null || offset + length > mapped.capacity() && size - mapped.capacity() >= REMAP_WINDOW) {
+                    if (readChannel == null) {
+                        readChannel = FileChannel.open(file, StandardOpenOption.READ);
+                    }
+                    mapped = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+                }
+                if (offset + length <= mapped.capacity()) {
+                    ByteBuffer buffer = mapped.duplicate();
+                    buffer.position((int) offset);
+                    buffer.limit((int) offset + length);
+                    return buffer.slice().asReadOnlyBuffer();
+                }
+                channel = readChannel;
+            }
+            // positional reads do not change the channel, they run concurrently
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException("Record at " + offset + " is behind the end of " + file);
+                }
+            }
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        }
+
+        synchronized FileChannel writeChannel() throws IOException {
+            if (writeChannel == null) {
+                writeChannel = FileChannel.open(file, StandardOpenOption.WRITE);
+            }
+            return writeChannel;
+        }
+
+        synchronized void unmap() {
+            mapped = null;
+        }
+
+        synchronized void close() throws IOException {
+            mapped = null;
+            if (readChannel != null) {
+                readChannel.close();
+                readChannel = null;
+            }
+            if (writeChannel != null) {
+                writeChannel.close();
+                writeChannel = null;
+            }
+        }
+    }
+
+    /**
+     * A stream reading a buffer.
+     */
+    static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package de.sybig.uniprotFetcher;
+
+import io.dropwizard.lifecycle.Managed;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The quality of all entries read so far, so <code>/best</code> can rank
+ * entries without reading their RDF files.
+ *
+ * The index is kept in memory and, if a file is configured, in a tab
+ * separated file with one line per entry
+ * (<code>ID reviewed obsolete level replacedBy</code>). Changes are appended
+ * to the file, the last line of an entry wins. The file is read when the
+ * index is created and rewritten without the old lines.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class QualityIndex implements Managed {
+
+    private static final Logger logger = LoggerFactory.getLogger(QualityIndex.class);
+    private static final int MAX_REPLACEMENTS = 10;
+
+    private final Map<String, UniProtQuality> qualities = new ConcurrentHashMap<>();
+    private final Path file;
+    private Writer writer;
+
+    /**
+     * Creates an index kept only in memory.
+     */
+    public QualityIndex() {
+        this.file = null;
+    }
+
+    /**
+     * Creates an index stored in the given file. Existing entries of the file
+     * are read.
+     *
+     * @param file The file of the index.
+     * @throws IOException If the file could not be read or rewritten.
+     */
+    public QualityIndex(Path file) throws IOException {
+        this.file = file;
+        load();
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public synchronized void stop() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * Gets the quality of an entry. If the entry was replaced, the quality of
+     * the replacing entry is returned, with the given ID.
+     *
+     * @param id The ID of the entry.
+     * @return The quality, or <code>null</code> if the entry or a replacing
+     * entry is not in the index.
+     */
+    public UniProtQuality get(String id) {
+        UniProtQuality quality = qualities.get(id);
+        for (int i = 0; quality != null && quality.getReplacedBy() != null; i++) {
+            if (i == MAX_REPLACEMENTS) {
+                logger.warn("Too many replacements for {}", id);
+                return null;
+            }
+            quality = qualities.get(quality.getReplacedBy());
+        }
+        if (quality == null) {
+            return null;
+        }
+        UniProtQuality result = new UniProtQuality();
+        result.setId(id);
+        result.setReviewed(quality.isReviewed());
+        result.setObsolete(quality.isObsolete());
+        result.setLevel(quality.getLevel());
+        return result;
+    }
+
+    /**
+     * Adds or updates the quality of an entry. The map and the file are
+     * updated under the same lock, so the last line of an entry in the file
+     * is the quality in the map.
+     *
+     * @param entry The entry read from its RDF file.
+     */
+    public synchronized void put(UniProtEntry entry) {
+        UniProtQuality quality = new UniProtQuality(entry);
+        UniProtQuality old = qualities.put(entry.getId(), quality);
+        if (quality.equals(old) || file == null) {
+            return;
+        }
+        try {
+            append(quality);
+        } catch (IOException ex) {
+            logger.warn("Could not write quality of {} to {}: {}", entry.getId(), file, ex.toString());
+        }
+    }
+
+    public int size() {
+        return qualities.size();
+    }
+
+    private synchronized void append(UniProtQuality quality) throws IOException {
+        if (writer == null) {
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        writer.write(format(quality));
+        writer.flush();
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                UniProtQuality quality = parse(line);
+                if (quality == null) {
+                    logger.warn("Ignoring invalid line {} of {}", lines, file);
+                    continue;
+                }
+                qualities.put(quality.getId(), quality);
+            }
+        }
+        logger.info("Read quality of {} entries from {}", qualities.size(), file);
+        if (lines > qualities.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the file with one line per entry.
+     */
+    private void compact() throws IOException {
+        Path tempFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                for (UniProtQuality quality : qualities.values()) {
+                    out.write(format(quality));
+                }
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private String format(UniProtQuality quality) {
+        return String.format("%s\t%b\t%b\t%d\t%s%n", quality.getId(), quality.isReviewed(), quality.isObsolete(),
+                quality.getLevel(), quality.getReplacedBy() == null ? "" : quality.getReplacedBy());
+    }
+
+    private UniProtQuality parse(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 5) {
+            return null;
+        }
+        UniProtQuality quality = new UniProtQuality();
+        quality.setId(fields[0]);
+        quality.setReviewed(Boolean.parseBoolean(fields[1]));
+        quality.setObsolete(Boolean.parseBoolean(fields[2]));
+        try {
+            quality.setLevel(Integer.parseInt(fields[3]));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        quality.setReplacedBy(fields[4].isEmpty() ? null : fields[4]);
+        return quality;
+    }
+}
@@ -0,0 +1,328 @@
+package de.sybig.uniprotFetcher;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the RDF file of a UniProt entry in a single streaming pass and
+ * creates the isoforms with their modifications directly, without building a
+ * DOM of the file. The descriptions referenced by the modifications (ranges
+ * and positions) are kept by their <code>rdf:about</code> while reading and
+ * are resolved when the end of the document is reached, so their order in the
+ * file does not matter.
+ *
+ * A reader holds the state of one file and should not be reused.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class RdfEntryReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(RdfEntryReader.class);
+
+    static final String RDF_NS = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    static final String CORE_NS = "http://purl.uniprot.org/core/";
+    static final String FALDO_NS = "http://biohackathon.org/resource/faldo#";
+    static final String SIMPLE_SEQUENCE = CORE_NS + "Simple_Sequence";
+    static final String MODIFIED_SEQUENCE = CORE_NS + "Modified_Sequence";
+    static final String ISOFORM_PREFIX = "http://purl.uniprot.org/isoforms/";
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final UniProtEntry entry = new UniProtEntry();
+    private Description canonicalSequence;
+    private final List<Description> modifiedSequences = new ArrayList<>();
+    private final Map<String, Description> references = new HashMap<>();
+    private String reviewed;
+    private String obsolete;
+
+    /**
+     * Reads the entry from the given RDF file.
+     *
+     * @param rdfFile The RDF file of the entry.
+     * @return The entry read from the file.
+     * @throws IOException If the file could not be read.
+     * @throws XMLStreamException If the file is not valid XML.
+     */
+    public UniProtEntry read(Path rdfFile) throws IOException, XMLStreamException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(rdfFile))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Reads the entry from the given stream. The stream is not closed.
+     *
+     * @param in The RDF/XML of the entry.
+     * @return The entry read from the stream.
+     * @throws XMLStreamException If the stream does not contain valid XML.
+     */
+    public UniProtEntry read(InputStream in) throws XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 2 && RDF_NS.equals(reader.getNamespaceURI()) && "Description".equals(reader.getLocalName())) {
+                        addDescription(readDescription(reader));
+                        depth--;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return buildEntry();
+    }
+
+    /**
+     * Creates the factory shared by all readers. The factory is only
+     * configured here, creating stream readers from it is thread safe.
+     */
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private Description readDescription(XMLStreamReader reader) throws XMLStreamException {
+        Description description = new Description(reader.getAttributeValue(RDF_NS, "about"));
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return description;
+            }
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                readProperty(reader, description);
+            }
+        }
+        return description;
+    }
+
+    /**
+     * Reads a property of a description. The reader is positioned on the end
+     * element of the property afterwards.
+     */
+    private void readProperty(XMLStreamReader reader, Description description) throws XMLStreamException {
+        String namespace = reader.getNamespaceURI();
+        String name = reader.getLocalName();
+        String resource = reader.getAttributeValue(RDF_NS, "resource");
+
+        if (RDF_NS.equals(namespace)) {
+            if ("value".equals(name)) {
+                description.value = reader.getElementText();
+                return;
+            }
+            if ("type".equals(name)) {
+                description.addType(resource);
+            }
+        } else if (CORE_NS.equals(namespace)) {
+            switch (name) {
+                case "name":
+                    description.addName(reader.getElementText());
+                    return;
+                case "substitution":
+                    description.substitution = reader.getElementText();
+                    return;
+                case "reviewed":
+                    String reviewedText = reader.getElementText();
+                    reviewed = reviewed == null ? reviewedText : reviewed;
+                    return;
+                case "obsolete":
+                    String obsoleteText = reader.getElementText();
+                    obsolete = obsolete == null ? obsoleteText : obsolete;
+                    return;
+                case "basedOn":
+                    description.basedOn = resource;
+                    break;
+                case "modification":
+                    description.addModification(resource);
+                    break;
+                case "range":
+                    description.range = resource;
+                    break;
+                case "existence":
+                    if (entry.getExistence() == null) {
+                        entry.setExistence(resource);
+                    }
+                    break;
+                case "replacedBy":
+                    if (entry.getReplacedBy() == null && resource != null) {
+                        entry.setReplacedBy(resource.substring(resource.lastIndexOf("/") + 1));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } else if (FALDO_NS.equals(namespace)) {
+            if ("position".equals(name)) {
+                description.position = Integer.parseInt(reader.getElementText().trim());
+                return;
+            }
+            if ("begin".equals(name)) {
+                description.begin = resource;
+            } else if ("end".equals(name)) {
+                description.end = resource;
+            }
+        }
+        skipElement(reader);
+    }
+
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private void addDescription(Description description) {
+        if (description.hasType(SIMPLE_SEQUENCE)) {
+            if (canonicalSequence == null) {
+                canonicalSequence = description;
+            }
+        } else if (description.hasType(MODIFIED_SEQUENCE)) {
+            modifiedSequences.add(description);
+        } else if (description.about != null
+                && (description.substitution != null || description.range != null
+                || description.begin != null || description.end != null
+                || description.position != null)) {
+            references.put(description.about, description);
+        }
+    }
+
+    private UniProtEntry buildEntry() {
+        entry.setReviewed(reviewed != null && !"false".equals(reviewed));
+        entry.setObsolete(obsolete != null && !"false".equals(obsolete));
+        entry.setCanonicalSequence(canonicalSequence == null ? new Isoform() : createIsoform(canonicalSequence));
+        for (Description description : modifiedSequences) {
+            entry.addModifiedSequence(createIsoform(description));
+        }
+        return entry;
+    }
+
+    private Isoform createIsoform(Description description) {
+        Isoform isoform = new Isoform();
+        String url = description.about;
+        isoform.setUrl(url);
+        isoform.setId(url.substring(url.lastIndexOf("/") + 1));
+        isoform.setSequence(description.value);
+        if (description.basedOn != null) {
+            isoform.setBasedOn(description.basedOn.replace(ISOFORM_PREFIX, ""));
+        }
+        if (description.names != null) {
+            for (String name : description.names) {
+                isoform.addName(name);
+            }
+        }
+        if (description.modifications != null) {
+            for (String uri : description.modifications) {
+                isoform.addModification(createModification(uri));
+            }
+        }
+        return isoform;
+    }
+
+    private Modification createModification(String uri) {
+        Modification modification = new Modification();
+        modification.setId(uri.substring(uri.lastIndexOf("/") + 1));
+        Description description = references.get(uri);
+        if (description == null) {
+            logger.warn("no modification found for {}", uri);
+            return modification;
+        }
+        modification.setSubstitution(description.substitution);
+        if (description.range == null) {
+            return modification;
+        }
+        Description range = references.get(description.range);
+        if (range == null) {
+            logger.warn("no range found for {}", description.range);
+            return modification;
+        }
+        modification.setBegin(getPos(range.begin));
+        modification.setEnd(getPos(range.end));
+        return modification;
+    }
+
+    private int getPos(String uri) {
+        if (uri == null) {
+            return 0;
+        }
+        Description position = references.get(uri);
+        if (position == null || position.position == null) {
+            return 0;
+        }
+        return position.position;
+    }
+
+    /**
+     * The properties of a <code>rdf:Description</code> needed to create the
+     * isoforms and their modifications.
+     */
+    private static class Description {
+
+        private final String about;
+        private List<String> types;
+        private String value;
+        private String basedOn;
+        private List<String> names;
+        private List<String> modifications;
+        private String substitution;
+        private String range;
+        private String begin;
+        private String end;
+        private Integer position;
+
+        Description(String about) {
+            this.about = about;
+        }
+
+        void addType(String type) {
+            if (types == null) {
+                types = new ArrayList<>(2);
+            }
+            types.add(type);
+        }
+
+        boolean hasType(String type) {
+            return types != null && types.contains(type);
+        }
+
+        void addName(String name) {
+            if (names == null) {
+                names = new ArrayList<>(2);
+            }
+            names.add(name);
+        }
+
+        void addModification(String uri) {
+            if (modifications == null) {
+                modifications = new ArrayList<>();
+            }
+            modifications.add(uri);
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package de.sybig.uniprotFetcher;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The local copies of the UniProt RDF files in the data directory. Missing
+ * files are fetched from UniProt with the {@link UpstreamClient}. Files older than the configured maximal age
+ * are returned as they are, and a refresh from UniProt is queued to a small
+ * background pool, so a request never waits for the refetch of a file it
+ * already has.
+ *
+ * Concurrent requests for the same entry share one download. A download is
+ * written to a temporary file in the data directory first and moved to its
+ * final name afterwards, so readers never see a partially written file. If a
+ * compression level is configured, the files are stored gzip compressed and
+ * decompressed while they are parsed.
+ *
+ * If the store is configured as packed, the files are kept in the segments of
+ * a {@link PackedStore} in the data directory instead of one file per entry.
+ *
+ * The time to find a local copy and the time to fetch a file from UniProt
+ * are published as timers, the failed fetches as counter and the size of the
+ * fetched files as histogram.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class RdfStore implements Managed {
+
+    private static final Logger logger = LoggerFactory.getLogger(RdfStore.class);
+    private static final String PLAIN_SUFFIX = ".rdf";
+    private static final String COMPRESSED_SUFFIX = ".rdf.gz";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final UniProtConfiguration configuration;
+    private final ConcurrentMap<String, CompletableFuture<Void>> downloads = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> fetchListeners = new CopyOnWriteArrayList<>();
+    private final Set<String> pendingRefreshs = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, Long> failedRefreshs = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor refreshExecutor;
+    private final PackedStore packedStore;
+    private final UpstreamClient upstream;
+    private final Timer localTimer;
+    private final Timer fetchTimer;
+    private final Counter fetchErrors;
+    private final Histogram entrySizes;
+
+    public RdfStore(UniProtConfiguration configuration) throws IOException {
+        this(configuration, new MetricRegistry());
+    }
+
+    public RdfStore(UniProtConfiguration configuration, MetricRegistry metrics) throws IOException {
+        // the configuration is validated by the server, not by the commands and tests
+        if (configuration.getCompressionLevel() < Deflater.NO_COMPRESSION
+                || configuration.getCompressionLevel() > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("compressionLevel must be between 0 and 9, not "
+                    + configuration.getCompressionLevel());
+        }
+        this.configuration = configuration;
+        localTimer = metrics.timer(MetricRegistry.name(RdfStore.class, "local"));
+        fetchTimer = metrics.timer(MetricRegistry.name(RdfStore.class, "fetch"));
+        fetchErrors = metrics.counter(MetricRegistry.name(RdfStore.class, "fetchErrors"));
+        entrySizes = metrics.histogram(MetricRegistry.name(RdfStore.class, "entrySize"));
+        upstream = new UpstreamClient(configuration, metrics);
+        packedStore = configuration.isPacked()
+                ? new PackedStore(Paths.get(configuration.getDataDir()), configuration.getSegmentSize().toBytes()) : null;
+        refreshExecutor = new ThreadPoolExecutor(configuration.getRefreshThreads(), configuration.getRefreshThreads(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(configuration.getRefreshQueueSize()),
+                new ThreadFactoryBuilder().setNameFormat("rdf-refresh-%d").setDaemon(true).build());
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() throws InterruptedException, IOException {
+        refreshExecutor.shutdownNow();
+        refreshExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        if (packedStore != null) {
+            packedStore.close();
+        }
+        upstream.close();
+    }
+
+    /**
+     * Registers a listener called with the ID of an entry after its file was
+     * fetched from UniProt.
+     *
+     * @param listener The listener to add.
+     */
+    public void addFetchListener(Consumer<String> listener) {
+        fetchListeners.add(listener);
+    }
+
+    /**
+     * Makes sure there is a local copy of the RDF file of an entry and gets
+     * its modification time. If there is no local copy yet, the file is
+     * fetched from UniProt. If the local copy is too old, it is kept and
+     * refreshed in the background.
+     *
+     * @param id The UniProt ID of the entry.
+     * @return The modification time of the local copy.
+     * @throws IOException If the file is not available locally and could not
+     * be fetched.
+     */
+    public FileTime getLastModified(String id) throws IOException {
+        if (packedStore == null) {
+            return Files.getLastModifiedTime(getRDFfile(id));
+        }
+        long start = System.nanoTime();
+        String key = id + ".rdf";
+        FileTime lastModified = packedStore.getLastModified(key);
+        Path looseFile = lastModified == null ? findLocalFile(id) : null;
+        if (looseFile != null) {
+            moveToPack(id, looseFile);
+            lastModified = packedStore.getLastModified(key);
+        }
+        if (lastModified == null) {
+            logger.debug("getting from uniprot {}", id);
+            fetch(id);
+            return packedStore.getLastModified(key);
+        }
+        if (isTooOld(lastModified)) {
+            scheduleRefresh(id);
+        }
+        localTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return lastModified;
+    }
+
+    /**
+     * Opens the local copy of the RDF file of an entry, which has to be made
+     * available with {@link #getLastModified(String)} before. A compressed
+     * copy is decompressed while it is read.
+     *
+     * @param id The UniProt ID of the entry.
+     * @return The content of the file.
+     * @throws IOException If there is no local copy.
+     */
+    public InputStream openRDF(String id) throws IOException {
+        InputStream in;
+        if (packedStore == null) {
+            Path localFile = findLocalFile(id);
+            if (localFile == null) {
+                throw new NoSuchFileException(getLocalFile(id).toString());
+            }
+            in = Files.newInputStream(localFile);
+        } else {
+            in = packedStore.open(id + ".rdf");
+            if (in == null) {
+                throw new NoSuchFileException(id + ".rdf");
+            }
+        }
+        return decompress(in);
+    }
+
+    /**
+     * Wraps a stream, which is decompressed if it starts with the gzip magic
+     * number. So plain and compressed copies can be read, independent of the
+     * configured compression.
+     */
+    static InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if (first == (GZIPInputStream.GZIP_MAGIC & 0xff) && second == (GZIPInputStream.GZIP_MAGIC >> 8)) {
+            return new GZIPInputStream(buffered, BUFFER_SIZE);
+        }
+        return buffered;
+    }
+
+    /**
+     * Reads the binary snapshot of an entry, if there is one not older than
+     * the given time.
+     *
+     * @param id The UniProt ID of the entry.
+     * @param notBefore The modification time of the RDF file.
+     * @return The entry, or <code>null</code> if the RDF file has to be read.
+     * @throws IOException If the snapshot could not be read.
+     */
+    public UniProtEntry readSnapshot(String id, FileTime notBefore) throws IOException {
+        if (packedStore == null) {
+            Path snapshot = getSnapshotFile(id);
+            try {
+                if (Files.getLastModifiedTime(snapshot).compareTo(notBefore) < 0) {
+                    return null;
+                }
+            } catch (NoSuchFileException ex) {
+                return null;
+            }
+            return EntrySnapshot.read(snapshot);
+        }
+        String key = id + ".snap";
+        FileTime lastModified = packedStore.getLastModified(key);
+        if (lastModified == null || lastModified.compareTo(notBefore) < 0) {
+            return null;
+        }
+        return EntrySnapshot.read(packedStore.get(key));
+    }
+
+    /**
+     * Writes the binary snapshot of an entry.
+     *
+     * @param id The UniProt ID of the entry.
+     * @param entry The parsed entry.
+     * @throws IOException If the snapshot could not be written.
+     */
+    public void writeSnapshot(String id, UniProtEntry entry) throws IOException {
+        if (packedStore == null) {
+            EntrySnapshot.write(entry, getSnapshotFile(id));
+            return;
+        }
+        packedStore.put(id + ".snap", ByteBuffer.wrap(EntrySnapshot.toBytes(entry)),
+                FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    /**
+     * Gets the RDF file of the entry with the given ID, if the store is not
+     * packed. If there is no local copy yet, the file is fetched from
+     * UniProt. If the local copy is too old, it is returned and refreshed in
+     * the background.
+     *
+     * @param id The UniProt ID of the entry.
+     * @return The path of the local copy.
+     * @throws IOException If the file is not available locally and could not
+     * be fetched.
+     */
+    public Path getRDFfile(String id) throws IOException {
+
+        long start = System.nanoTime();
+        Path localFile = findLocalFile(id);
+
+        if (localFile == null) {
+            logger.debug("getting from uniprot {}", id);
+            fetch(id);
+            return getLocalFile(id);
+        }
+
+        if (isTooOld(Files.readAttributes(localFile, BasicFileAttributes.class).lastModifiedTime())) {
+            scheduleRefresh(id);
+        }
+
+        localTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return localFile;
+    }
+
+    /**
+     * Queues the refresh of the local copy of an entry if it is older than
+     * the configured maximal age. Unlike {@link #getLastModified(String)}
+     * nothing is fetched if there is no local copy.
+     *
+     * @param id The UniProt ID of the entry.
+     */
+    public void refreshIfOld(String id) {
+        FileTime lastModified = null;
+        if (packedStore != null) {
+            lastModified = packedStore.getLastModified(id + PLAIN_SUFFIX);
+        }
+        Path localFile = lastModified == null ? findLocalFile(id) : null;
+        if (localFile != null) {
+            try {
+                lastModified = Files.getLastModifiedTime(localFile);
+            } catch (IOException ex) {
+                logger.debug("could not get the age of {}: {}", localFile, ex.toString());
+            }
+        }
+        if (lastModified != null && isTooOld(lastModified)) {
+            scheduleRefresh(id);
+        }
+    }
+
+    private boolean isTooOld(FileTime lastModified) {
+        FileTime validTime = FileTime.fromMillis(System.currentTimeMillis() - configuration.getMaxAge().toMilliseconds());
+        return lastModified.compareTo(validTime) < 1;
+    }
+
+    /**
+     * Queues the refetch of an old file. An entry is queued only once until
+     * its refresh is done, if the queue is full the refresh is dropped and
+     * tried again on the next request of the entry. After a failed refresh
+     * the entry is not refreshed again for the configured back-off.
+     */
+    private void scheduleRefresh(String id) {
+        Long failed = failedRefreshs.get(id);
+        if (failed != null) {
+            if (System.nanoTime() - failed < configuration.getRefreshBackoff().toNanoseconds()) {
+                return;
+            }
+            failedRefreshs.remove(id, failed);
+        }
+        if (!pendingRefreshs.add(id)) {
+            return;
+        }
+        logger.info("File {} is to old, will be refetched from uniprot.", id);
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    fetch(id);
+                } catch (IOException | RuntimeException ex) {
+                    failedRefreshs.put(id, System.nanoTime());
+                    logger.warn("Could not re-fetch {} from Uniprot, keeping old file. {}", id, ex.toString());
+                } finally {
+                    pendingRefreshs.remove(id);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            logger.debug("refresh queue is full, not refreshing {} now", id);
+            pendingRefreshs.remove(id);
+        }
+    }
+
+    /**
+     * The file new copies of an entry are written to, <code>ID.rdf.gz</code>
+     * if the files are compressed, <code>ID.rdf</code> otherwise.
+     *
+     * @param id The UniProt ID of the entry.
+     * @return The path of the local copy.
+     */
+    public Path getLocalFile(String id) {
+        Path file = Paths.get(configuration.getDataDir(), id + (isCompressed() ? COMPRESSED_SUFFIX : PLAIN_SUFFIX));
+        return file;
+    }
+
+    /**
+     * Finds the local copy of an entry. A copy written before the compression
+     * was switched on or off is used until the entry is fetched again.
+     *
+     * @return The local copy, or <code>null</code> if there is none.
+     */
+    private Path findLocalFile(String id) {
+        Path file = getLocalFile(id);
+        if (Files.isReadable(file)) {
+            return file;
+        }
+        Path other = getOtherLocalFile(id);
+        return Files.isReadable(other) ? other : null;
+    }
+
+    private Path getOtherLocalFile(String id) {
+        return Paths.get(configuration.getDataDir(), id + (isCompressed() ? PLAIN_SUFFIX : COMPRESSED_SUFFIX));
+    }
+
+    private boolean isCompressed() {
+        return configuration.getCompressionLevel() > 0;
+    }
+
+    /**
+     * The file of the binary snapshot of an entry, next to its RDF file.
+     *
+     * @param id The UniProt ID of the entry.
+     * @return The path of the snapshot.
+     */
+    public Path getSnapshotFile(String id) {
+        return Paths.get(configuration.getDataDir(), id + ".snap");
+    }
+
+    /**
+     * Fetches the file of an entry from UniProt. If a download of the entry
+     * is already running, its result is awaited instead of starting a second
+     * one.
+     */
+    private void fetch(String id) throws IOException {
+        CompletableFuture<Void> download = new CompletableFuture<>();
+        CompletableFuture<Void> running = downloads.putIfAbsent(id, download);
+        if (running != null) {
+            logger.debug("waiting for running download of {}", id);
+            await(running);
+            return;
+        }
+        try {
+            download(id);
+            download.complete(null);
+        } catch (IOException | RuntimeException ex) {
+            fetchErrors.inc();
+            download.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            downloads.remove(id, download);
+        }
+        // the file is stored, a failing listener does not fail the fetch
+        for (Consumer<String> listener : fetchListeners) {
+            try {
+                listener.accept(id);
+            } catch (RuntimeException ex) {
+                logger.warn("Fetch listener failed for {}", id, ex);
+            }
+        }
+    }
+
+    private void download(String id) throws IOException {
+        try (Timer.Context context = fetchTimer.time()) {
+            upstream.fetch(id + PLAIN_SUFFIX, content -> {
+                CountingInputStream in = new CountingInputStream(content);
+                store(id, in);
+                entrySizes.update(in.getByteCount());
+            });
+        }
+    }
+
+    /**
+     * Stores a new copy of an entry, compressed if configured.
+     *
+     * @param id The UniProt ID of the entry.
+     * @param in The content of the RDF file.
+     * @throws IOException If the copy could not be written.
+     */
+    void store(String id, InputStream in) throws IOException {
+        Path localFile = getLocalFile(id);
+        Files.createDirectories(localFile.toAbsolutePath().getParent());
+        Path tempFile = Files.createTempFile(localFile.toAbsolutePath().getParent(), id, ".tmp");
+        try {
+            try (OutputStream out = isCompressed()
+                    ? new LevelGZIPOutputStream(Files.newOutputStream(tempFile), configuration.getCompressionLevel())
+                    : new BufferedOutputStream(Files.newOutputStream(tempFile), BUFFER_SIZE)) {
+                IOUtils.copyLarge(in, out, new byte[BUFFER_SIZE]);
+            }
+            if (packedStore != null) {
+                addToPack(id + ".rdf", tempFile);
+                return;
+            }
+            try {
+                Files.move(tempFile, localFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempFile, localFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.deleteIfExists(getOtherLocalFile(id));
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Moves a file written before the store was packed into the pack. The
+     * loose copies and the loose snapshot are deleted once the file is
+     * packed, the snapshot is written again on the next request.
+     */
+    private void moveToPack(String id, Path looseFile) throws IOException {
+        try {
+            addToPack(id + PLAIN_SUFFIX, looseFile);
+        } catch (NoSuchFileException ex) {
+            // moved by a concurrent request
+            if (!packedStore.contains(id + PLAIN_SUFFIX)) {
+                throw ex;
+            }
+            return;
+        }
+        Files.deleteIfExists(getLocalFile(id));
+        Files.deleteIfExists(getOtherLocalFile(id));
+        Files.deleteIfExists(getSnapshotFile(id));
+    }
+
+    private void addToPack(String key, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            packedStore.put(key, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                    Files.getLastModifiedTime(file));
+        }
+    }
+
+    /**
+     * A gzip stream with a configurable compression level.
+     */
+    private static class LevelGZIPOutputStream extends GZIPOutputStream {
+
+        LevelGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+
+    private void await(CompletableFuture<Void> download) throws IOException {
+        try {
+            download.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for download");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+}
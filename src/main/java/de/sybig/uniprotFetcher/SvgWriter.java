@@ -0,0 +1,276 @@
+package de.sybig.uniprotFetcher;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renders the SVG of an alignment directly to a stream.
+ *
+ * The constant parts of the document are encoded once, numbers are written
+ * digit by digit into the buffer of the writer, so rendering allocates
+ * nearly nothing besides the buffer.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class SvgWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SvgWriter.class);
+
+    static final int LINE_HEIGHT = 25;
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final byte[] SVG_START = bytes("<svg width=\"");
+    private static final byte[] SVG_HEIGHT = bytes("\" height=\"");
+    private static final byte[] SVG_ATTRIBUTES = bytes("\" xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" onload=\"init(evt)\">\n");
+    private static final byte[] SCRIPT = bytes("<script type=\"text/ecmascript\">\n"
+            + "<![CDATA[\n"
+            + "  function init(evt)\n"
+            + "  {\n"
+            + "    if ( window.svgDocument == null )\n"
+            + "    {\n"
+            + "      svgDocument = evt.target.ownerDocument;\n"
+            + "    }\n"
+            + "    tooltip = svgDocument.getElementById('tooltip');\n"
+            + "  }\n"
+            + "function ShowTooltip(evt, mouseovertext)\n"
+            + "{\n"
+            + "  tooltip.setAttributeNS(null,\"x\",11);\n"
+            + "  tooltip.setAttributeNS(null,\"y\",evt.clientY+27);\n"
+            + "  tooltip.firstChild.data = mouseovertext;\n"
+            + "  tooltip.setAttributeNS(null,\"visibility\",\"visible\");\n"
+            + "}\n"
+            + "\n"
+            + "function HideTooltip()\n"
+            + "{\n"
+            + "  tooltip.setAttributeNS(null,\"visibility\",\"hidden\");\n"
+            + "}"
+            + "]]></script>");
+    private static final byte[] SVG_END = bytes("<text class=\"tooltip\" id=\"tooltip\"\n"
+            + "      x=\"0\" y=\"0\" visibility=\"hidden\">Tooltip</text>\n"
+            + "</svg>");
+    private static final byte[] GROUP_START = bytes("<g>\n  <rect x = \"5\" y = \"");
+    private static final byte[] RECT_X = bytes("  <rect x = \"");
+    private static final byte[] RECT_Y = bytes("\" y = \"");
+    private static final byte[] RECT_WIDTH = bytes("\" width = \"");
+    private static final byte[] SEQUENCE_END = bytes("\" height = \"20\" stroke = \"none\" fill = \"#FFCC62\"/>\n");
+    private static final byte[] FEATURE_FILL = bytes("\" height = \"18\" stroke = \"none\" fill = \"#");
+    private static final byte[] FEATURE_TOOLTIP = bytes("\" onmousemove=\"ShowTooltip(evt, '");
+    private static final byte[] FEATURE_END = bytes("')\"\n    onmouseout=\"HideTooltip()\" /> \n");
+    private static final byte[] TEXT_X = bytes("  <text x=\"");
+    private static final byte[] TEXT_Y = bytes("\" y=\"");
+    private static final byte[] TEXT_ATTRIBUTES = bytes("\" font-family=\"Verdana\" font-size=\"10\" fill=\"blue\">");
+    private static final byte[] GROUP_END = bytes("</text>\n</g>\n\n");
+    private static final byte[] DBD_HEIGHT = bytes("\" height = \"");
+    private static final byte[] DBD_FILL = bytes("\" stroke = \"none\" fill = \"");
+    private static final byte[] DBD_END = bytes("\"/>\n");
+    private static final byte[] GAP_COLOR = bytes("EEEEEE");
+    private static final byte[] MISMATCH_COLOR = bytes("FFAAAA");
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+
+    public SvgWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the SVG of an alignment and flushes the stream.
+     *
+     * @param alignment The aligned sequences.
+     * @param sequence The sequence of the DNA binding domain to mark, or
+     * <code>null</code>.
+     * @param color The color of the DNA binding domain.
+     * @param width The width of the SVG.
+     * @throws IOException If the stream could not be written.
+     */
+    public void write(List<AlignedSequence> alignment, String sequence, String color, int width) throws IOException {
+        write(SVG_START);
+        write(width);
+        write(SVG_HEIGHT);
+        write(alignment.size() * LINE_HEIGHT + 30);
+        write(SVG_ATTRIBUTES);
+        write(SCRIPT);
+        double aaSize = ((double) width) / getMaxSequenceLength(alignment);
+        if (sequence != null) {
+            writeDBD(alignment, sequence, aaSize, color);
+        }
+        writeAlignments(alignment, aaSize, width);
+        write(SVG_END);
+        flush();
+    }
+
+    private void writeAlignments(List<AlignedSequence> alignment, double aaSize, int width) throws IOException {
+        int ypos = 10;
+        for (AlignedSequence sequence : alignment) {
+            write(GROUP_START);
+            write(ypos);
+            write(RECT_WIDTH);
+            write((int) (aaSize * sequence.getSequence().length()));
+            write(SEQUENCE_END);
+
+            for (SequenceFeature feature : sequence.getFeatures()) {
+                byte[] color = getColor(feature.getType());
+                if (color == null) {
+                    continue;
+                }
+                write(RECT_X);
+                write((int) (feature.getStart() * aaSize + 5));
+                write(RECT_Y);
+                write(ypos + 1);
+                write(RECT_WIDTH);
+                write((int) (aaSize * feature.getLength()));
+                write(FEATURE_FILL);
+                write(color);
+                write(FEATURE_TOOLTIP);
+                // type: start - end (length)
+                write(feature.getType());
+                write(':');
+                write(' ');
+                write(feature.getStart() - feature.getMovedStart());
+                write(' ');
+                write('-');
+                write(' ');
+                write(feature.getEnd() - feature.getMovedStart());
+                write(' ');
+                write('(');
+                write(feature.getLength());
+                write(')');
+                write(FEATURE_END);
+            }
+            write(TEXT_X);
+            write(width - 60);
+            write(TEXT_Y);
+            write(ypos + 15);
+            write(TEXT_ATTRIBUTES);
+            write(sequence.getId());
+            write(GROUP_END);
+            ypos += LINE_HEIGHT;
+        }
+    }
+
+    private void writeDBD(List<AlignedSequence> alignment, String sequence, double aaSize, String color) throws IOException {
+        String canonicalSequence = alignment.get(0).getSequence();
+        String origSequence = canonicalSequence.replace("-", "");
+
+        int start = origSequence.indexOf(sequence);
+        if (start < 0) {
+            logger.error("Could not find DBD for {}", alignment.get(0).getId());
+            return;
+        }
+        int end = start + sequence.length();
+        int height = LINE_HEIGHT * alignment.size() + 20;
+        write(RECT_X);
+        write((int) (aaSize * start));
+        write(RECT_Y);
+        write(0);
+        write(RECT_WIDTH);
+        write((int) (aaSize * end - start));
+        write(DBD_HEIGHT);
+        write(height);
+        write(DBD_FILL);
+        write(color);
+        write(DBD_END);
+        logger.debug("   found at {} --- {}", start, end);
+    }
+
+    private static byte[] getColor(String type) {
+        if ("gap".equals(type) || "gapD".equals(type) || "gapI".equals(type)) {
+            return GAP_COLOR;
+        }
+        if ("mismatch".equals(type)) {
+            return MISMATCH_COLOR;
+        }
+        return null;
+    }
+
+    private static int getMaxSequenceLength(List<AlignedSequence> alignment) {
+        int maxLength = 0;
+        for (AlignedSequence sequence : alignment) {
+            maxLength = Math.max(maxLength, sequence.getSequence().length());
+        }
+        return maxLength;
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - position) {
+            flushBuffer();
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void write(char c) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) c;
+    }
+
+    /**
+     * Writes the decimal digits of a number.
+     */
+    private void write(int number) throws IOException {
+        if (buffer.length - position < 11) {
+            flushBuffer();
+        }
+        if (number == Integer.MIN_VALUE) {
+            write(bytes(Integer.toString(number)));
+            return;
+        }
+        if (number < 0) {
+            buffer[position++] = '-';
+            number = -number;
+        }
+        int digits = 1;
+        for (int n = number; n >= 10; n /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + number % 10);
+            number /= 10;
+        }
+        position += digits;
+    }
+
+    /**
+     * Writes a string, ASCII characters without encoding the string first.
+     */
+    private void write(String text) throws IOException {
+        if (text == null) {
+            write(bytes("null"));
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                write(text.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+        }
+        for (int i = 0; i < text.length(); i++) {
+            write(text.charAt(i));
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    private void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
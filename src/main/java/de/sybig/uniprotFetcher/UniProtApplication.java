@@ -1,7 +1,9 @@
 package de.sybig.uniprotFetcher;
 
 import io.dropwizard.Application;
+import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import java.nio.file.Paths;
 
 /**
  *
@@ -13,10 +15,28 @@ public class UniProtApplication extends Application<UniProtConfiguration> {
         new UniProtApplication().run(args);
     }
 
+    @Override
+    public void initialize(Bootstrap<UniProtConfiguration> bootstrap) {
+        bootstrap.addCommand(new CompactCommand());
+        bootstrap.addCommand(new ImportCommand());
+    }
+
     @Override
     public void run(UniProtConfiguration configuration, Environment environment) throws Exception {
 
-        environment.jersey().register(new Isoforms(configuration));
+        RdfStore rdfStore = new RdfStore(configuration, environment.metrics());
+        environment.lifecycle().manage(rdfStore);
+        QualityIndex qualityIndex = configuration.getQualityIndexFile() == null
+                ? new QualityIndex() : new QualityIndex(Paths.get(configuration.getQualityIndexFile()));
+        environment.lifecycle().manage(qualityIndex);
+        Isoforms isoforms = new Isoforms(configuration, rdfStore, qualityIndex, environment.metrics());
+        environment.lifecycle().manage(isoforms);
+        environment.jersey().register(isoforms);
+        environment.jersey().register(new FormatFilter());
+
+        Warmup warmup = new Warmup(configuration, isoforms, environment.metrics());
+        environment.lifecycle().manage(warmup);
+        environment.admin().addTask(new WarmupTask(warmup));
 
     }
 
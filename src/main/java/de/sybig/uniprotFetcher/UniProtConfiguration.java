@@ -2,6 +2,11 @@ package de.sybig.uniprotFetcher;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.Configuration;
+import io.dropwizard.client.HttpClientConfiguration;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 
 /**
  *
@@ -10,6 +15,33 @@ import io.dropwizard.Configuration;
 public class UniProtConfiguration extends Configuration {
 
     private String dataDir;
+    private String qualityIndexFile;
+    private boolean snapshots = false;
+    private boolean packed = false;
+    private Size segmentSize = Size.megabytes(256);
+    @Min(0)
+    @Max(9)
+    private int compressionLevel = 0;
+    private String uniprotUrl = "https://www.uniprot.org/uniprot/";
+    private HttpClientConfiguration upstreamClient = createUpstreamClient();
+    private int upstreamRetries = 2;
+    private Duration upstreamBackoff = Duration.milliseconds(500);
+    private int upstreamFailureThreshold = 5;
+    private Duration upstreamOpenTime = Duration.seconds(30);
+    private Duration maxAge = Duration.days(90);
+    private int refreshThreads = 2;
+    private int refreshQueueSize = 1000;
+    private Duration refreshBackoff = Duration.hours(1);
+    private long isoformCacheSize = 1000;
+    private Duration isoformCacheExpiry = Duration.days(1);
+    private long alignmentCacheSize = 1000;
+    private long svgCacheSize = 1000;
+    private int bestThreads = 16;
+    private Duration bestTimeout = Duration.seconds(5);
+    private int batchThreads = 8;
+    private int alignmentThreads = 4;
+    private String warmupFile;
+    private int warmupThreads = 4;
 
     @JsonProperty
     public void setDataDir(String dataDir) {
@@ -20,4 +52,367 @@ public class UniProtConfiguration extends Configuration {
     public String getDataDir() {
         return dataDir;
     }
+
+    /**
+     * The file storing the quality of the entries read so far, used by
+     * <code>/best</code>. If not set the index is only kept in memory.
+     */
+    @JsonProperty
+    public String getQualityIndexFile() {
+        return qualityIndexFile;
+    }
+
+    @JsonProperty
+    public void setQualityIndexFile(String qualityIndexFile) {
+        this.qualityIndexFile = qualityIndexFile;
+    }
+
+    /**
+     * Whether a binary snapshot is written next to each RDF file and read
+     * instead of the RDF file.
+     */
+    @JsonProperty
+    public boolean isSnapshots() {
+        return snapshots;
+    }
+
+    @JsonProperty
+    public void setSnapshots(boolean snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Whether the RDF files and snapshots are stored in a few append-only
+     * segment files in the data directory instead of one file per entry.
+     * Loose RDF files already in the data directory are moved into the
+     * segments when they are requested.
+     */
+    @JsonProperty
+    public boolean isPacked() {
+        return packed;
+    }
+
+    @JsonProperty
+    public void setPacked(boolean packed) {
+        this.packed = packed;
+    }
+
+    /**
+     * The size after which a new segment is started, at most 2 GB.
+     */
+    @JsonProperty
+    public Size getSegmentSize() {
+        return segmentSize;
+    }
+
+    @JsonProperty
+    public void setSegmentSize(Size segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * The gzip level (1 to 9) new copies of the RDF files are compressed
+     * with, 0 to store them uncompressed. Copies stored with another setting
+     * are still read.
+     */
+    @JsonProperty
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    @JsonProperty
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * The base URL the RDF files are fetched from, the file name
+     * <code>ID.rdf</code> is appended to it.
+     */
+    @JsonProperty
+    public String getUniprotUrl() {
+        return uniprotUrl;
+    }
+
+    @JsonProperty
+    public void setUniprotUrl(String uniprotUrl) {
+        this.uniprotUrl = uniprotUrl;
+    }
+
+    /**
+     * The pooled HTTP client fetching the RDF files, with the timeouts of a
+     * request and the size of the pool. At most
+     * <code>maxConnectionsPerRoute</code> files are fetched at once, a fetch
+     * waiting longer than <code>connectionRequestTimeout</code> for a
+     * connection fails.
+     */
+    @JsonProperty
+    public HttpClientConfiguration getUpstreamClient() {
+        return upstreamClient;
+    }
+
+    @JsonProperty
+    public void setUpstreamClient(HttpClientConfiguration upstreamClient) {
+        this.upstreamClient = upstreamClient;
+    }
+
+    private static HttpClientConfiguration createUpstreamClient() {
+        HttpClientConfiguration client = new HttpClientConfiguration();
+        client.setTimeout(Duration.seconds(10));
+        client.setConnectionTimeout(Duration.seconds(10));
+        client.setConnectionRequestTimeout(Duration.seconds(5));
+        client.setMaxConnections(16);
+        client.setMaxConnectionsPerRoute(16);
+        return client;
+    }
+
+    /**
+     * The number of times a fetch failed by a connection error, a timeout or
+     * a server error is retried.
+     */
+    @JsonProperty
+    public int getUpstreamRetries() {
+        return upstreamRetries;
+    }
+
+    @JsonProperty
+    public void setUpstreamRetries(int upstreamRetries) {
+        this.upstreamRetries = upstreamRetries;
+    }
+
+    /**
+     * The pause before the first retry of a fetch, doubled for each further
+     * retry.
+     */
+    @JsonProperty
+    public Duration getUpstreamBackoff() {
+        return upstreamBackoff;
+    }
+
+    @JsonProperty
+    public void setUpstreamBackoff(Duration upstreamBackoff) {
+        this.upstreamBackoff = upstreamBackoff;
+    }
+
+    /**
+     * The number of fetches failing in a row, after all retries, after which
+     * UniProt is not contacted for the open time. Missing files can't be
+     * fetched then, old files are used without refreshing them.
+     */
+    @JsonProperty
+    public int getUpstreamFailureThreshold() {
+        return upstreamFailureThreshold;
+    }
+
+    @JsonProperty
+    public void setUpstreamFailureThreshold(int upstreamFailureThreshold) {
+        this.upstreamFailureThreshold = upstreamFailureThreshold;
+    }
+
+    /**
+     * The time UniProt is not contacted after too many failed fetches. Then
+     * a single fetch is tried, if it fails UniProt is not contacted for
+     * another open time.
+     */
+    @JsonProperty
+    public Duration getUpstreamOpenTime() {
+        return upstreamOpenTime;
+    }
+
+    @JsonProperty
+    public void setUpstreamOpenTime(Duration upstreamOpenTime) {
+        this.upstreamOpenTime = upstreamOpenTime;
+    }
+
+    /**
+     * The age after which a local RDF file is refreshed from UniProt. Old
+     * files are still used until the refresh is done.
+     */
+    @JsonProperty
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    @JsonProperty
+    public void setMaxAge(Duration maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * The number of threads refreshing old files in the background.
+     */
+    @JsonProperty
+    public int getRefreshThreads() {
+        return refreshThreads;
+    }
+
+    @JsonProperty
+    public void setRefreshThreads(int refreshThreads) {
+        this.refreshThreads = refreshThreads;
+    }
+
+    /**
+     * The maximal number of queued refreshs, more refreshs are dropped and
+     * tried again on the next request of the entry.
+     */
+    @JsonProperty
+    public int getRefreshQueueSize() {
+        return refreshQueueSize;
+    }
+
+    @JsonProperty
+    public void setRefreshQueueSize(int refreshQueueSize) {
+        this.refreshQueueSize = refreshQueueSize;
+    }
+
+    /**
+     * The time an old file is not refreshed again after its refresh failed,
+     * so an entry removed from UniProt is not fetched on every request.
+     */
+    @JsonProperty
+    public Duration getRefreshBackoff() {
+        return refreshBackoff;
+    }
+
+    @JsonProperty
+    public void setRefreshBackoff(Duration refreshBackoff) {
+        this.refreshBackoff = refreshBackoff;
+    }
+
+    /**
+     * The maximal number of entries whose isoforms are kept in memory.
+     */
+    @JsonProperty
+    public long getIsoformCacheSize() {
+        return isoformCacheSize;
+    }
+
+    @JsonProperty
+    public void setIsoformCacheSize(long isoformCacheSize) {
+        this.isoformCacheSize = isoformCacheSize;
+    }
+
+    /**
+     * The time after which the isoforms kept in memory are read again from
+     * the RDF file, so old files are refetched also for entries requested
+     * often.
+     */
+    @JsonProperty
+    public Duration getIsoformCacheExpiry() {
+        return isoformCacheExpiry;
+    }
+
+    @JsonProperty
+    public void setIsoformCacheExpiry(Duration isoformCacheExpiry) {
+        this.isoformCacheExpiry = isoformCacheExpiry;
+    }
+
+    /**
+     * The maximal number of computed alignments kept in memory.
+     */
+    @JsonProperty
+    public long getAlignmentCacheSize() {
+        return alignmentCacheSize;
+    }
+
+    @JsonProperty
+    public void setAlignmentCacheSize(long alignmentCacheSize) {
+        this.alignmentCacheSize = alignmentCacheSize;
+    }
+
+    /**
+     * The maximal number of rendered SVGs kept in memory.
+     */
+    @JsonProperty
+    public long getSvgCacheSize() {
+        return svgCacheSize;
+    }
+
+    @JsonProperty
+    public void setSvgCacheSize(long svgCacheSize) {
+        this.svgCacheSize = svgCacheSize;
+    }
+
+    /**
+     * The number of threads getting the quality of the entries for
+     * <code>/best</code>, shared by all requests.
+     */
+    @JsonProperty
+    public int getBestThreads() {
+        return bestThreads;
+    }
+
+    @JsonProperty
+    public void setBestThreads(int bestThreads) {
+        this.bestThreads = bestThreads;
+    }
+
+    /**
+     * The maximal time a request to <code>/best</code> waits for the quality
+     * of its entries. Entries not available in time are not considered.
+     */
+    @JsonProperty
+    public Duration getBestTimeout() {
+        return bestTimeout;
+    }
+
+    @JsonProperty
+    public void setBestTimeout(Duration bestTimeout) {
+        this.bestTimeout = bestTimeout;
+    }
+
+    /**
+     * The number of threads reading the entries of the batch requests. A
+     * batch request has at most twice as many entries in progress.
+     */
+    @JsonProperty
+    public int getBatchThreads() {
+        return batchThreads;
+    }
+
+    @JsonProperty
+    public void setBatchThreads(int batchThreads) {
+        this.batchThreads = batchThreads;
+    }
+
+    /**
+     * The parallelism of the pool aligning the isoforms of an entry. The
+     * isoforms of an entry are aligned one after the other with 1.
+     */
+    @JsonProperty
+    public int getAlignmentThreads() {
+        return alignmentThreads;
+    }
+
+    @JsonProperty
+    public void setAlignmentThreads(int alignmentThreads) {
+        this.alignmentThreads = alignmentThreads;
+    }
+
+    /**
+     * A file with IDs of entries to fetch, parse and align at startup, or
+     * <code>null</code> to start without warmup.
+     */
+    @JsonProperty
+    public String getWarmupFile() {
+        return warmupFile;
+    }
+
+    @JsonProperty
+    public void setWarmupFile(String warmupFile) {
+        this.warmupFile = warmupFile;
+    }
+
+    /**
+     * The number of entries warmed up in parallel.
+     */
+    @JsonProperty
+    public int getWarmupThreads() {
+        return warmupThreads;
+    }
+
+    @JsonProperty
+    public void setWarmupThreads(int warmupThreads) {
+        this.warmupThreads = warmupThreads;
+    }
 }
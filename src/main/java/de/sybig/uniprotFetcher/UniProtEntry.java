@@ -0,0 +1,92 @@
+package de.sybig.uniprotFetcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parts of a UniProt entry used by the service, as read from the RDF file
+ * of the entry.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class UniProtEntry {
+
+    private String id;
+    private String replacedBy;
+    private boolean reviewed = false;
+    private boolean obsolete = false;
+    private String existence;
+    private Isoform canonicalSequence;
+    private List<Isoform> modifiedSequences = new ArrayList<>();
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    /**
+     * The ID of the entry replacing this one, or <code>null</code> if the
+     * entry was not replaced.
+     *
+     * @return The ID of the replacing entry.
+     */
+    public String getReplacedBy() {
+        return replacedBy;
+    }
+
+    public void setReplacedBy(String replacedBy) {
+        this.replacedBy = replacedBy;
+    }
+
+    public boolean isReviewed() {
+        return reviewed;
+    }
+
+    public void setReviewed(boolean reviewed) {
+        this.reviewed = reviewed;
+    }
+
+    public boolean isObsolete() {
+        return obsolete;
+    }
+
+    public void setObsolete(boolean obsolete) {
+        this.obsolete = obsolete;
+    }
+
+    public String getExistence() {
+        return existence;
+    }
+
+    public void setExistence(String existence) {
+        this.existence = existence;
+    }
+
+    public Isoform getCanonicalSequence() {
+        return canonicalSequence;
+    }
+
+    public void setCanonicalSequence(Isoform canonicalSequence) {
+        this.canonicalSequence = canonicalSequence;
+    }
+
+    public List<Isoform> getModifiedSequences() {
+        return modifiedSequences;
+    }
+
+    public void setModifiedSequences(List<Isoform> modifiedSequences) {
+        this.modifiedSequences = modifiedSequences;
+    }
+
+    public void addModifiedSequence(Isoform isoform) {
+        modifiedSequences.add(isoform);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s {%d isoforms, replaced by %s}", id, modifiedSequences.size() + 1, replacedBy);
+    }
+}
@@ -0,0 +1,130 @@
+package de.sybig.uniprotFetcher;
+
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The properties of an entry used to select the best of several entries.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class UniProtQuality {
+
+    private static final Logger logger = LoggerFactory.getLogger(UniProtQuality.class);
+
+    private String id;
+    private boolean obsolete = false;
+    private boolean reviewed = false;
+    private int level = 0;
+    private String replacedBy;
+
+    public UniProtQuality() {
+        super();
+    }
+
+    /**
+     * Creates the quality of an entry read from its RDF file.
+     *
+     * @param entry The entry.
+     */
+    public UniProtQuality(UniProtEntry entry) {
+        this.id = entry.getId();
+        this.reviewed = entry.isReviewed();
+        this.obsolete = entry.isObsolete();
+        this.replacedBy = entry.getReplacedBy();
+        if (entry.getExistence() != null) {
+            setLevel(entry.getExistence());
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public boolean isObsolete() {
+        return obsolete;
+    }
+
+    public void setObsolete(boolean obsolete) {
+        this.obsolete = obsolete;
+    }
+
+    public boolean isReviewed() {
+        return reviewed;
+    }
+
+    public void setReviewed(boolean reviewed) {
+        this.reviewed = reviewed;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public void setLevel(String level) {
+        if ("http://purl.uniprot.org/core/Evidence_at_Protein_Level_Existence".equals(level)) {
+            this.level = 1;
+        } else if ("http://purl.uniprot.org/core/Evidence_at_Transcript_Level_Existence".equals(level)) {
+            this.level = 2;
+        } else if ("http://purl.uniprot.org/core/Inferred_from_Homology_Existence".equals(level)) {
+            this.level = 3;
+        } else if ("http://purl.uniprot.org/core/Predicted_Existence".equals(level)) {
+            this.level = 4;
+        } else {
+            logger.debug("level not found {}", level);
+        }
+    }
+
+    /**
+     * The ID of the entry replacing this one, or <code>null</code>.
+     *
+     * @return The ID of the replacing entry.
+     */
+    public String getReplacedBy() {
+        return replacedBy;
+    }
+
+    public void setReplacedBy(String replacedBy) {
+        this.replacedBy = replacedBy;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s {%b %d}", id, reviewed, level);
+    }
+    //1. Experimental evidence at protein level   <existence rdf:resource="http://purl.uniprot.org/core/Evidence_at_Protein_Level_Existence"/>
+//2. Experimental evidence at transcript level    <existence rdf:resource="http://purl.uniprot.org/core/Evidence_at_Transcript_Level_Existence"/>
+//3. Protein inferred from homology  http://purl.uniprot.org/core/Inferred_from_Homology_Existence
+//4. Protein predicted http://purl.uniprot.org/core/Predicted_Existence
+//5. Protein uncertain
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, obsolete, reviewed, level, replacedBy);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final UniProtQuality other = (UniProtQuality) obj;
+        return obsolete == other.obsolete
+                && reviewed == other.reviewed
+                && level == other.level
+                && Objects.equals(id, other.id)
+                && Objects.equals(replacedBy, other.replacedBy);
+    }
+}
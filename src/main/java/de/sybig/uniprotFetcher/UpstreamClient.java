@@ -0,0 +1,267 @@
+package de.sybig.uniprotFetcher;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.net.UrlEscapers;
+import io.dropwizard.client.HttpClientBuilder;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches files from UniProt with a pool of kept alive connections. The pool
+ * holds at most <code>upstreamClient.maxConnectionsPerRoute</code>
+ * connections, a request waiting longer than the
+ * <code>connectionRequestTimeout</code> for one fails, so a slow UniProt
+ * does not tie up all threads of the server.
+ *
+ * Requests failed by a connection error, a timeout or a server error are
+ * retried with exponentially growing pauses, requests UniProt answers with a
+ * client error like 404 are not. After the configured number of
+ * requests failed in a row, the circuit breaker opens: the following requests
+ * fail at once without contacting UniProt, so the local copies are used. After
+ * the open time one request is let through, if it succeeds the breaker is
+ * closed again. A failure of the consumer of the content, like a full disk,
+ * is no failure of UniProt, it is neither retried nor counted by the
+ * breaker.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class UpstreamClient implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamClient.class);
+
+    private final UniProtConfiguration configuration;
+    private final CloseableHttpClient client;
+    private final Counter retries;
+    private final Counter rejected;
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicBoolean trial = new AtomicBoolean();
+    private volatile boolean open;
+    private volatile long openUntil;
+
+    public UpstreamClient(UniProtConfiguration configuration, MetricRegistry metrics) {
+        this.configuration = configuration;
+        client = new HttpClientBuilder(metrics).using(configuration.getUpstreamClient()).build("uniprot");
+        retries = metrics.counter(MetricRegistry.name(UpstreamClient.class, "retries"));
+        rejected = metrics.counter(MetricRegistry.name(UpstreamClient.class, "rejected"));
+        metrics.register(MetricRegistry.name(UpstreamClient.class, "open"), (Gauge<Boolean>) () -> open);
+    }
+
+    /**
+     * Fetches a file from UniProt. The content is passed to the consumer,
+     * which is called again if the transfer fails and is retried. An
+     * exception of the consumer itself is thrown at once.
+     *
+     * @param file The name of the file, appended to the UniProt URL. It is
+     * escaped as a segment of the path.
+     * @param consumer The consumer of the content.
+     * @throws FileNotFoundException If UniProt does not have the file.
+     * @throws IOException If the file could not be fetched, or the circuit
+     * breaker is open.
+     */
+    public void fetch(String file, ContentConsumer consumer) throws IOException {
+        URI url = URI.create(configuration.getUniprotUrl() + UrlEscapers.urlPathSegmentEscaper().escape(file));
+        boolean trialRequest = acquire(url);
+        long backoff = configuration.getUpstreamBackoff().toMilliseconds();
+        try {
+            for (int attempt = 0;; attempt++) {
+                try {
+                    get(url, consumer);
+                    succeeded();
+                    return;
+                } catch (ConsumerException ex) {
+                    throw ex.getCause();
+                } catch (FileNotFoundException ex) {
+                    // UniProt answered, only the entry is missing
+                    succeeded();
+                    throw ex;
+                } catch (ConnectionPoolTimeoutException ex) {
+                    // a full pool is no failure of UniProt, and retrying would only wait longer
+                    throw ex;
+                } catch (IOException ex) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw ex;
+                    }
+                    // the trial of an open breaker is not retried
+                    if (attempt >= configuration.getUpstreamRetries() || open) {
+                        failed(trialRequest, url, ex);
+                        throw ex;
+                    }
+                }
+                retries.inc();
+                sleep(backoff << attempt, url);
+            }
+        } finally {
+            // whatever ended the trial, the next request after the open time may try again
+            if (trialRequest) {
+                trial.set(false);
+            }
+        }
+    }
+
+    private void get(URI url, ContentConsumer consumer) throws IOException {
+        try (CloseableHttpResponse response = client.execute(new HttpGet(url))) {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (status == HttpStatus.SC_OK && entity != null) {
+                // reading the content to its end returns the connection to the pool
+                try (TransferInputStream in = new TransferInputStream(entity.getContent())) {
+                    try {
+                        consumer.accept(in);
+                    } catch (IOException ex) {
+                        if (ex != in.failure) {
+                            throw new ConsumerException(ex);
+                        }
+                        throw ex;
+                    }
+                }
+                return;
+            }
+            EntityUtils.consume(entity);
+            if (status >= HttpStatus.SC_BAD_REQUEST && status < HttpStatus.SC_INTERNAL_SERVER_ERROR && status != 429) {
+                throw new FileNotFoundException(url + " " + response.getStatusLine());
+            }
+            throw new IOException("Server returned " + response.getStatusLine() + " for " + url);
+        }
+    }
+
+    /**
+     * Checks the circuit breaker before a request.
+     *
+     * @return <code>true</code> if the request is the trial of an open
+     * breaker.
+     * @throws IOException If the breaker is open.
+     */
+    private boolean acquire(URI url) throws IOException {
+        if (!open) {
+            return false;
+        }
+        if (System.nanoTime() - openUntil < 0 || !trial.compareAndSet(false, true)) {
+            rejected.inc();
+            throw new IOException("UniProt is not available, not fetching " + url);
+        }
+        logger.info("Trying UniProt again with {}", url);
+        return true;
+    }
+
+    private void succeeded() {
+        failures.set(0);
+        if (open) {
+            logger.info("UniProt is available again");
+            open = false;
+        }
+    }
+
+    private void failed(boolean trialRequest, URI url, IOException ex) {
+        int failed = failures.incrementAndGet();
+        logger.warn("Could not fetch {}, {} failures in a row: {}", url, failed, ex.toString());
+        if (trialRequest || !open && failed >= configuration.getUpstreamFailureThreshold()) {
+            logger.warn("Not contacting UniProt for {}", configuration.getUpstreamOpenTime());
+            openUntil = System.nanoTime() + configuration.getUpstreamOpenTime().toNanoseconds();
+            open = true;
+        }
+    }
+
+    /**
+     * Waits before a retry, between half and one and a half of the pause, so
+     * the retries of concurrent requests are spread.
+     */
+    private void sleep(long millis, URI url) throws InterruptedIOException {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis / 2 + ThreadLocalRandom.current().nextLong(millis + 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while retrying " + url);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+
+    /**
+     * Reads the content of a fetched file.
+     */
+    public interface ContentConsumer {
+
+        void accept(InputStream in) throws IOException;
+    }
+
+    /**
+     * The content of a response, remembering its last failure, to tell the
+     * failures of the transfer from those of the consumer.
+     */
+    private static class TransferInputStream extends FilterInputStream {
+
+        private IOException failure;
+
+        TransferInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException ex) {
+                failure = ex;
+                throw ex;
+            }
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            try {
+                return super.read(bytes, offset, length);
+            } catch (IOException ex) {
+                failure = ex;
+                throw ex;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            try {
+                return super.skip(n);
+            } catch (IOException ex) {
+                failure = ex;
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * A failure of the consumer, passed through the retries.
+     */
+    private static class ConsumerException extends IOException {
+
+        ConsumerException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package de.sybig.uniprotFetcher;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches, parses and aligns a list of entries, so they are in the caches
+ * before the first user requests them. The warmup is run at startup for the
+ * IDs in the configured warmup file, and on demand by the {@link WarmupTask}
+ * on the admin connector.
+ *
+ * The progress of the current warmup is published as gauges, the time per
+ * entry as timer.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class Warmup implements Managed {
+
+    private static final Logger logger = LoggerFactory.getLogger(Warmup.class);
+
+    private final UniProtConfiguration configuration;
+    private final Isoforms isoforms;
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final Timer timer;
+
+    public Warmup(UniProtConfiguration configuration, Isoforms isoforms, MetricRegistry metrics) {
+        this.configuration = configuration;
+        this.isoforms = isoforms;
+        timer = metrics.timer(MetricRegistry.name(Warmup.class, "entries"));
+        metrics.register(MetricRegistry.name(Warmup.class, "total"), (Gauge<Integer>) total::get);
+        metrics.register(MetricRegistry.name(Warmup.class, "done"), (Gauge<Integer>) done::get);
+        metrics.register(MetricRegistry.name(Warmup.class, "failed"), (Gauge<Integer>) failed::get);
+    }
+
+    /**
+     * Warms up the entries of the configured warmup file, if there is one.
+     * The application starts accepting requests after the warmup is done.
+     */
+    @Override
+    public void start() throws IOException, InterruptedException {
+        if (configuration.getWarmupFile() == null) {
+            return;
+        }
+        List<String> ids = readIds(Paths.get(configuration.getWarmupFile()));
+        logger.info("Warming up {} entries from {}", ids.size(), configuration.getWarmupFile());
+        run(ids, null);
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    /**
+     * Reads the IDs from a file with one ID per line. Empty lines and lines
+     * starting with <code>#</code> are ignored.
+     *
+     * @param file The file with the IDs.
+     * @return The IDs of the file.
+     * @throws IOException If the file could not be read.
+     */
+    public static List<String> readIds(Path file) throws IOException {
+        return parseIds(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Splits a text into IDs. The IDs are separated by new lines, commas or
+     * white space, lines starting with <code>#</code> are ignored.
+     *
+     * @param text The text with the IDs.
+     * @return The IDs of the text.
+     */
+    public static List<String> parseIds(String text) {
+        List<String> ids = new ArrayList<>();
+        for (String line : text.split("\\R")) {
+            if (line.trim().startsWith("#")) {
+                continue;
+            }
+            for (String id : line.split("[,\\s]+")) {
+                if (!id.isEmpty()) {
+                    ids.add(id);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Fetches, parses and aligns the given entries with at most
+     * <code>warmupThreads</code> entries in parallel. Only one warmup runs at
+     * a time.
+     *
+     * @param ids The IDs to warm up.
+     * @param progress Gets a line for each finished entry, may be
+     * <code>null</code>.
+     * @return The number of entries that could not be warmed up.
+     * @throws InterruptedException If the warmup was interrupted.
+     */
+    public synchronized int run(List<String> ids, PrintWriter progress) throws InterruptedException {
+        long start = System.nanoTime();
+        total.set(ids.size());
+        done.set(0);
+        failed.set(0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(configuration.getWarmupThreads(),
+                new ThreadFactoryBuilder().setNameFormat("warmup-%d").setDaemon(true).build());
+        try {
+            CompletionService<String> completion = new ExecutorCompletionService<>(executor);
+            for (String id : ids) {
+                completion.submit(() -> warmup(id));
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                Future<String> result = completion.take();
+                String line;
+                try {
+                    line = result.get();
+                } catch (ExecutionException ex) {
+                    failed.incrementAndGet();
+                    line = ex.getCause().getMessage();
+                }
+                done.incrementAndGet();
+                if (progress != null) {
+                    progress.printf("%d/%d %s%n", done.get(), ids.size(), line);
+                    progress.flush();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        String summary = String.format("Warmed up %d entries in %d ms, %d failed", ids.size(), millis, failed.get());
+        logger.info(summary);
+        if (progress != null) {
+            progress.println(summary);
+            progress.flush();
+        }
+        return failed.get();
+    }
+
+    private String warmup(String id) throws Exception {
+        long start = System.nanoTime();
+        try (Timer.Context context = timer.time()) {
+            isoforms.getAlignmentPos(id);
+        } catch (Exception ex) {
+            logger.warn("Could not warm up {}: {}", id, ex.toString());
+            throw new Exception(String.format("%s failed: %s", id, ex), ex);
+        }
+        return String.format("%s %d ms", id, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
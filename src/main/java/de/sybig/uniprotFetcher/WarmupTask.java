@@ -0,0 +1,41 @@
+package de.sybig.uniprotFetcher;
+
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.PostBodyTask;
+import java.io.PrintWriter;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Admin task to warm up the caches with a list of entries. The IDs are taken
+ * from the body of the request and from the files given with the
+ * <code>file</code> parameter, e.g.
+ * <code>curl -X POST 'http://localhost:7081/tasks/warmup?file=ids.txt'</code>.
+ * A line is written for each finished entry.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class WarmupTask extends PostBodyTask {
+
+    private final Warmup warmup;
+
+    public WarmupTask(Warmup warmup) {
+        super("warmup");
+        this.warmup = warmup;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, String body, PrintWriter output) throws Exception {
+        List<String> ids = new ArrayList<>();
+        if (body != null) {
+            ids.addAll(Warmup.parseIds(body));
+        }
+        for (String file : parameters.get("file")) {
+            ids.addAll(Warmup.readIds(Paths.get(file)));
+        }
+        output.printf("Warming up %d entries%n", ids.size());
+        output.flush();
+        warmup.run(ids, output);
+    }
+}
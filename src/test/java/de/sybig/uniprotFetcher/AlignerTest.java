@@ -0,0 +1,127 @@
+package de.sybig.uniprotFetcher;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class AlignerTest {
+
+    private static final String RESIDUES = "ACDEFGHIKLMNPQRSTVWY";
+
+    @Test
+    public void parallelIsSameAsSerial() throws Exception {
+        Aligner aligner = new Aligner(4);
+        Random random = new Random(11);
+        int aligned = 0;
+        for (int round = 0; round < 100; round++) {
+            List<Isoform> isoforms = createIsoforms(random);
+            List<AlignedSequence> expected;
+            try {
+                expected = Aligner.alignSerially(isoforms);
+            } catch (RuntimeException ex) {
+                // not every random entry can be aligned
+                continue;
+            }
+            assertEquals(describe(expected), describe(aligner.align(isoforms)));
+            aligned++;
+        }
+        assertTrue("only " + aligned + " entries aligned", aligned > 30);
+    }
+
+    @Test
+    public void testDataIsSameAsSerial() throws Exception {
+        UniProtConfiguration config = new UniProtConfiguration();
+        config.setDataDir("testData");
+        config.setUniprotUrl("http://localhost:1/");
+        Isoforms isoforms = new Isoforms(config);
+        Aligner aligner = new Aligner(4);
+        for (String id : new String[]{"1isoWithDeletion", "smallerMismatch", "test2sameSubs", "testSameLengthMismatch"}) {
+            List<Isoform> entry = isoforms.getIsoforms(id);
+            assertEquals(id, describe(Aligner.alignSerially(entry)), describe(aligner.align(entry)));
+        }
+    }
+
+    /**
+     * Creates the canonical isoform and isoforms with some of a set of
+     * modifications, most based on the canonical isoform.
+     */
+    private static List<Isoform> createIsoforms(Random random) {
+        StringBuilder canonical = new StringBuilder();
+        int length = 30 + random.nextInt(100);
+        for (int i = 0; i < length; i++) {
+            canonical.append(RESIDUES.charAt(random.nextInt(RESIDUES.length())));
+        }
+        List<Modification> modifications = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Modification modification = new Modification();
+            modification.setId("VSP_" + i);
+            modification.setBegin(1 + random.nextInt(length - 10));
+            modification.setEnd(modification.getBegin() + random.nextInt(8));
+            StringBuilder substitution = new StringBuilder();
+            for (int s = random.nextInt(10); s > 0; s--) {
+                substitution.append(RESIDUES.charAt(random.nextInt(RESIDUES.length())));
+            }
+            modification.setSubstitution(substitution.toString());
+            modifications.add(modification);
+        }
+        List<Isoform> isoforms = new ArrayList<>();
+        Isoform first = new Isoform();
+        first.setId("P1-1");
+        first.setSequence(canonical.toString());
+        isoforms.add(first);
+        int count = 2 + random.nextInt(8);
+        for (int i = 2; i <= count; i++) {
+            Isoform isoform = new Isoform();
+            isoform.setId("P1-" + i);
+            // some isoforms are based on a modified one
+            isoform.setBasedOn(i > 2 && random.nextInt(4) == 0 ? "P1-" + (1 + random.nextInt(i - 1)) : "P1-1");
+            List<Modification> own = new ArrayList<>();
+            for (Modification modification : modifications) {
+                if (random.nextInt(3) == 0 && !overlaps(own, modification)) {
+                    own.add(modification);
+                }
+            }
+            own.sort(Comparator.comparingInt(Modification::getBegin));
+            isoform.setModifications(own.isEmpty() ? null : own);
+            isoform.setSequence(apply(canonical.toString(), own));
+            isoforms.add(isoform);
+        }
+        return isoforms;
+    }
+
+    private static boolean overlaps(List<Modification> modifications, Modification modification) {
+        for (Modification other : modifications) {
+            if (other.getBegin() <= modification.getEnd() && modification.getBegin() <= other.getEnd()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String apply(String sequence, List<Modification> modifications) {
+        StringBuilder modified = new StringBuilder(sequence);
+        for (int i = modifications.size() - 1; i >= 0; i--) {
+            Modification modification = modifications.get(i);
+            modified.replace(modification.getBegin() - 1, modification.getEnd(), modification.getSubstitution());
+        }
+        return modified.toString();
+    }
+
+    private static String describe(List<AlignedSequence> alignment) {
+        StringBuilder description = new StringBuilder();
+        for (AlignedSequence sequence : alignment) {
+            description.append(sequence.getId()).append(' ').append(sequence.getSequence()).append('\n');
+            for (SequenceFeature feature : sequence.getFeatures()) {
+                description.append("  ").append(feature).append(" moved ").append(feature.getMovedStart()).append('\n');
+            }
+        }
+        return description.toString();
+    }
+}
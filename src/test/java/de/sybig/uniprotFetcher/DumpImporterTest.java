@@ -0,0 +1,130 @@
+package de.sybig.uniprotFetcher;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class DumpImporterTest {
+
+    private static final String[] FILES = {"test2sameSubs", "1isoWithDeletion", "smallerMismatch"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void dumpIsSplitIntoEntries() throws Exception {
+        DumpSplitter splitter = new DumpSplitter(new BufferedReader(new StringReader(dump())));
+        for (String file : FILES) {
+            DumpSplitter.Record record = splitter.next();
+            assertEquals(file, record.getId());
+            UniProtEntry entry = new RdfEntryReader().read(
+                    new ByteArrayInputStream(record.getContent().getBytes(StandardCharsets.UTF_8)));
+            UniProtEntry expected = new RdfEntryReader().read(Paths.get("testData", file + ".rdf"));
+            assertEquals(expected.getCanonicalSequence().getSequence(), entry.getCanonicalSequence().getSequence());
+            assertEquals(expected.getModifiedSequences().size(), entry.getModifiedSequences().size());
+        }
+        assertNull(splitter.next());
+    }
+
+    @Test
+    public void importIsResumed() throws Exception {
+        Path dump = folder.getRoot().toPath().resolve("dump.rdf.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(dump))) {
+            out.write(dump().getBytes(StandardCharsets.UTF_8));
+        }
+        UniProtConfiguration config = new UniProtConfiguration();
+        config.setDataDir(folder.newFolder("data").getPath());
+        config.setSnapshots(true);
+        RdfStore store = new RdfStore(config);
+        QualityIndex qualityIndex = new QualityIndex();
+        Path checkpoint = folder.getRoot().toPath().resolve("import.checkpoint");
+        try {
+            DumpImporter importer = new DumpImporter(config, store, qualityIndex, 2, checkpoint);
+            assertEquals(FILES.length, importer.run(dump));
+            for (String file : FILES) {
+                assertTrue(Files.exists(store.getLocalFile(file)));
+                assertNotNull(store.readSnapshot(file, Files.getLastModifiedTime(store.getLocalFile(file))));
+                assertNotNull(qualityIndex.get(file));
+            }
+
+            // a new run skips the entries of the checkpoint
+            assertEquals(0, new DumpImporter(config, store, qualityIndex, 2, checkpoint).run(dump));
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void failedEntryIsImportedByNextRun() throws Exception {
+        int entries = 200;
+        Path dump = folder.getRoot().toPath().resolve("dump.rdf");
+        Files.write(dump, RdfFixture.createDump(entries, 2, 300, 7).getBytes(StandardCharsets.UTF_8));
+        UniProtConfiguration config = new UniProtConfiguration();
+        config.setDataDir(folder.newFolder("data").getPath());
+        RdfStore store = new RdfStore(config);
+        QualityIndex qualityIndex = new QualityIndex();
+        Path checkpoint = folder.getRoot().toPath().resolve("import.checkpoint");
+        Path failedFile = folder.getRoot().toPath().resolve("import.checkpoint.failed");
+        String failing = RdfFixture.getAccession(2);
+        // a directory in place of the file of an early entry lets its import fail
+        Path blocked = store.getLocalFile(failing);
+        Files.createDirectories(blocked.resolve("blocking"));
+        try {
+            assertEquals(entries - 1, new DumpImporter(config, store, qualityIndex, 2, checkpoint).run(dump));
+            // the checkpoint passes the failed entry, which is listed for the next run
+            assertTrue(Files.readAllLines(checkpoint).get(0).endsWith("\t" + entries));
+            assertTrue(Files.readAllLines(failedFile).get(0).endsWith("\t" + failing));
+            Files.delete(blocked.resolve("blocking"));
+            Files.delete(blocked);
+
+            assertEquals(1, new DumpImporter(config, store, qualityIndex, 2, checkpoint).run(dump));
+            assertTrue(Files.isRegularFile(store.getLocalFile(failing)));
+            assertTrue(Files.readAllLines(failedFile).isEmpty());
+            assertEquals(0, new DumpImporter(config, store, qualityIndex, 2, checkpoint).run(dump));
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void progressKeepsOnlyEntriesBehindCheckpoint() {
+        DumpImporter.Progress progress = new DumpImporter.Progress(0);
+        // entries finish out of order, within the window of the workers
+        for (long i = 0; i < 10000; i += 4) {
+            progress.done(i + 3);
+            progress.done(i + 1);
+            progress.done(i + 2);
+            assertEquals(3, progress.pending());
+            progress.done(i);
+            assertEquals(0, progress.pending());
+        }
+        assertEquals(10000, progress.contiguous());
+    }
+
+    /**
+     * Concatenates the test files, with the ID of each entry taken from its
+     * file name.
+     */
+    private String dump() throws Exception {
+        StringBuilder dump = new StringBuilder();
+        for (String file : FILES) {
+            String rdf = new String(Files.readAllBytes(Paths.get("testData", file + ".rdf")), StandardCharsets.UTF_8);
+            dump.append(rdf.replace("http://sybig.de/tfclass/test", "http://purl.uniprot.org/uniprot/" + file));
+        }
+        return dump.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package de.sybig.uniprotFetcher;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class EntrySnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void snapshotContainsEntry() throws Exception {
+        UniProtEntry entry = new RdfEntryReader().read(Paths.get("testData", "test2sameSubs.rdf"));
+        entry.setId("test2sameSubs");
+        entry.setReplacedBy("NEW");
+        Path file = folder.getRoot().toPath().resolve("test2sameSubs.snap");
+        EntrySnapshot.write(entry, file);
+
+        UniProtEntry read = EntrySnapshot.read(file);
+        assertEquals("test2sameSubs", read.getId());
+        assertEquals("NEW", read.getReplacedBy());
+        assertTrue(read.isReviewed());
+        assertFalse(read.isObsolete());
+        assertNull(read.getExistence());
+        assertEquals("ABCDEFGHIJKLMNOPQRSTUVWXYZ", read.getCanonicalSequence().getSequence());
+        assertNull(read.getCanonicalSequence().getModifications());
+        assertNull(read.getCanonicalSequence().getBasedOn());
+        assertEquals(2, read.getModifiedSequences().size());
+
+        Isoform iso2 = read.getModifiedSequences().get(0);
+        Isoform orig = entry.getModifiedSequences().get(0);
+        assertEquals(orig.getId(), iso2.getId());
+        assertEquals(orig.getUrl(), iso2.getUrl());
+        assertEquals(orig.getSequence(), iso2.getSequence());
+        assertEquals(orig.getBasedOn(), iso2.getBasedOn());
+        assertEquals(orig.getNames(), iso2.getNames());
+        Modification modification = iso2.getModifications().get(0);
+        assertEquals("VSP_000001", modification.getId());
+        assertEquals("12345", modification.getSubstitution());
+        assertEquals(5, modification.getBegin());
+        assertEquals(5, modification.getEnd());
+    }
+
+    @Test
+    public void otherVersionIsNotRead() throws Exception {
+        UniProtEntry entry = new RdfEntryReader().read(Paths.get("testData", "1isoWithDeletion.rdf"));
+        Path file = folder.getRoot().toPath().resolve("1isoWithDeletion.snap");
+        EntrySnapshot.write(entry, file);
+
+        byte[] data = Files.readAllBytes(file);
+        ByteBuffer.wrap(data).putInt(4, EntrySnapshot.VERSION + 1);
+        assertNull(EntrySnapshot.read(data));
+        assertNull(EntrySnapshot.read(folder.getRoot().toPath().resolve("missing.snap")));
+    }
+
+    @Test
+    public void corruptCountsAreNotRead() {
+        for (int count : new int[]{0, -2, Integer.MIN_VALUE, 1000, Integer.MAX_VALUE}) {
+            ByteBuffer buffer = ByteBuffer.allocate(64);
+            buffer.putInt(EntrySnapshot.MAGIC).putInt(EntrySnapshot.VERSION);
+            buffer.putInt(-1).putInt(-1).put((byte) 0).put((byte) 0).putInt(-1);
+            // the canonical isoform without strings and with the count of its names
+            buffer.putInt(-1).putInt(-1).putInt(-1).putInt(-1).putInt(count).putInt(-1);
+            buffer.putInt(0);
+            buffer.flip();
+            if (count == 0) {
+                assertNotNull(EntrySnapshot.read(buffer));
+            } else {
+                assertNull(EntrySnapshot.read(buffer));
+            }
+        }
+    }
+}
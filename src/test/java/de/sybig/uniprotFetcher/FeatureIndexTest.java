@@ -0,0 +1,85 @@
+package de.sybig.uniprotFetcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class FeatureIndexTest {
+
+    @Test
+    public void featuresKeepTheirOrder() {
+        FeatureIndex index = new FeatureIndex();
+        SequenceFeature late = feature(20, 30, "gap");
+        SequenceFeature early = feature(1, 5, "mismatch");
+        index.add(late);
+        index.add(early);
+        assertEquals(Arrays.asList(late, early), index.getFeatures());
+        assertEquals(Arrays.asList(early, late), index.getOverlapping(0, 100));
+        assertTrue(index.contains(feature(20, 30, "gap")));
+        assertFalse(index.contains(feature(20, 30, "mismatch")));
+    }
+
+    @Test
+    public void rangeQueries() {
+        FeatureIndex index = new FeatureIndex();
+        SequenceFeature a = feature(1, 10, "gap");
+        SequenceFeature b = feature(5, 7, "gap");
+        SequenceFeature c = feature(8, 20, "mismatch");
+        index.add(a);
+        index.add(b);
+        index.add(c);
+        assertEquals(Arrays.asList(a, b), index.getOverlapping(6, 7));
+        assertEquals(Arrays.asList(a, c), index.getContaining(9, 10));
+        assertEquals(Arrays.asList(b), index.getContainedIn(4, 9));
+        assertEquals(Arrays.asList(c), index.getWithRange(8, 20));
+        assertTrue(index.getWithRange(8, 19).isEmpty());
+    }
+
+    @Test
+    public void sameAsScanningAllFeatures() {
+        Random random = new Random(7);
+        FeatureIndex index = new FeatureIndex();
+        List<SequenceFeature> all = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int start = random.nextInt(1000);
+            SequenceFeature feature = feature(start, start + random.nextInt(50), "gap");
+            index.add(feature);
+            all.add(feature);
+            int from = random.nextInt(1000);
+            int to = from + random.nextInt(100);
+            assertEquals(scan(all, f -> f.getStart() <= to && f.getEnd() >= from), index.getOverlapping(from, to));
+            assertEquals(scan(all, f -> f.getStart() <= from && f.getEnd() >= to), index.getContaining(from, to));
+            assertEquals(scan(all, f -> f.getStart() >= from && f.getEnd() <= to), index.getContainedIn(from, to));
+        }
+        assertEquals(all, index.getFeatures());
+    }
+
+    private static List<SequenceFeature> scan(List<SequenceFeature> features, Predicate<SequenceFeature> filter) {
+        List<SequenceFeature> result = new ArrayList<>();
+        for (SequenceFeature feature : features) {
+            if (filter.test(feature)) {
+                result.add(feature);
+            }
+        }
+        // stable, features with the same start stay in the order they were added
+        result.sort(Comparator.comparingInt(SequenceFeature::getStart));
+        return result;
+    }
+
+    private static SequenceFeature feature(int start, int end, String type) {
+        SequenceFeature feature = new SequenceFeature();
+        feature.setStart(start);
+        feature.setEnd(end);
+        feature.setType(type);
+        return feature;
+    }
+}
@@ -0,0 +1,95 @@
+package de.sybig.uniprotFetcher;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class GappedSequenceTest {
+
+    @Test
+    public void gapsAreInsertedAndMerged() {
+        GappedSequence sequence = new GappedSequence("ABCDEF");
+        sequence.insertGap(2, 3);
+        assertEquals("AB---CDEF", sequence.toString());
+        sequence.insertGap(4, 1);
+        assertEquals("AB----CDEF", sequence.toString());
+        sequence.insertGap(10, 2);
+        assertEquals("AB----CDEF--", sequence.toString());
+        assertTrue(sequence.endsWithGap());
+        assertEquals(6, sequence.getGapCount());
+        assertEquals("ABCDEF", sequence.getResidues());
+    }
+
+    @Test
+    public void gappedStringIsParsed() {
+        GappedSequence sequence = new GappedSequence("-AB--C-");
+        assertEquals("ABC", sequence.getResidues());
+        assertEquals(4, sequence.getGapCount());
+        sequence.insertGap(1, 1);
+        assertEquals("--AB--C-", sequence.toString());
+    }
+
+    @Test
+    public void gapsBeforeResidue() {
+        GappedSequence sequence = new GappedSequence("-AB--C-");
+        assertEquals(0, sequence.getGapsBefore(-1));
+        assertEquals(1, sequence.getGapsBefore(0));
+        assertEquals(1, sequence.getGapsBefore(1));
+        assertEquals(3, sequence.getGapsBefore(2));
+        assertEquals(4, sequence.getGapsBefore(3));
+        assertEquals(4, sequence.getGapsBefore(100));
+    }
+
+    @Test
+    public void cigarHasRunsOfResiduesAndGaps() {
+        assertEquals("3M2D4M", new GappedSequence("ABC--DEFG").toCigar());
+        assertEquals("1D2M2D1M1D", new GappedSequence("-AB--C-").toCigar());
+        assertEquals("3M", new GappedSequence("ABC").toCigar());
+        assertEquals("", new GappedSequence("").toCigar());
+    }
+
+    @Test(expected = StringIndexOutOfBoundsException.class)
+    public void gapBehindTheEndIsRejected() {
+        new GappedSequence("ABC").insertGap(4, 1);
+    }
+
+    @Test
+    public void sameAsInsertingIntoString() {
+        Random random = new Random(42);
+        for (int round = 0; round < 100; round++) {
+            StringBuilder residues = new StringBuilder();
+            int length = random.nextInt(50);
+            for (int i = 0; i < length; i++) {
+                residues.append((char) ('A' + random.nextInt(20)));
+            }
+            String expected = residues.toString();
+            GappedSequence sequence = new GappedSequence(expected);
+            for (int gap = 0; gap < 10; gap++) {
+                int index = random.nextInt(expected.length() + 1);
+                int count = random.nextInt(4);
+                StringBuilder gaps = new StringBuilder();
+                for (int i = 0; i < count; i++) {
+                    gaps.append('-');
+                }
+                expected = expected.substring(0, index) + gaps + expected.substring(index);
+                sequence.insertGap(index, count);
+                assertEquals(expected.length(), sequence.length());
+            }
+            assertEquals(expected, sequence.toString());
+            int gaps = 0;
+            int residue = 0;
+            for (int i = 0; i < expected.length(); i++) {
+                if (expected.charAt(i) == '-') {
+                    gaps++;
+                } else {
+                    assertEquals(gaps, sequence.getGapsBefore(residue++));
+                }
+            }
+            assertEquals(gaps, sequence.getGapsBefore(residue));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package de.sybig.uniprotFetcher;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.testing.junit.ResourceTestRule;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import org.junit.ClassRule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the resource methods through Jersey.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class IsoformsResourceTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @ClassRule
+    public static final ResourceTestRule resources = ResourceTestRule.builder()
+            .addResource(createResource())
+            .addProvider(new FormatFilter())
+            .build();
+
+    private static Isoforms createResource() {
+        UniProtConfiguration config = new UniProtConfiguration();
+        config.setDataDir("testData");
+        // nothing listens there, old files in testData are not refreshed
+        config.setUniprotUrl("http://localhost:1/");
+        try {
+            return new Isoforms(config);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Test
+    public void alignmentIsGappedByDefault() throws Exception {
+        JsonNode alignment = MAPPER.readTree(resources.target("/isoforms/alignmentPos/1isoWithDeletion")
+                .request().get(String.class));
+        assertTrue(alignment.get(0).has("sequence"));
+        assertFalse(alignment.get(0).has("cigar"));
+    }
+
+    @Test
+    public void compactAlignmentHasGapRuns() throws Exception {
+        Response response = resources.target("/isoforms/alignmentPos/1isoWithDeletion")
+                .request(Isoforms.COMPACT_ALIGNMENT).get();
+        assertEquals(200, response.getStatus());
+        assertEquals(Isoforms.COMPACT_ALIGNMENT, response.getMediaType().toString());
+        JsonNode compact = MAPPER.readTree(response.readEntity(String.class));
+        JsonNode gapped = MAPPER.readTree(resources.target("/isoforms/alignmentPos/1isoWithDeletion")
+                .request().get(String.class));
+        assertEquals(gapped.size(), compact.size());
+        for (int i = 0; i < gapped.size(); i++) {
+            String sequence = gapped.get(i).get("sequence").asText();
+            assertFalse(compact.get(i).has("sequence"));
+            assertEquals(new GappedSequence(sequence).toCigar(), compact.get(i).get("cigar").asText());
+            assertEquals(sequence.length(), compact.get(i).get("length").asInt());
+            assertEquals(gapped.get(i).get("features"), compact.get(i).get("features"));
+        }
+    }
+
+    @Test
+    public void compactAlignmentWithQueryParameter() throws Exception {
+        JsonNode compact = MAPPER.readTree(resources.target("/isoforms/alignmentPos/1isoWithDeletion")
+                .queryParam("format", "compact")
+                .request().get(String.class));
+        assertTrue(compact.get(0).has("cigar"));
+    }
+
+    @Test
+    public void formatParameterIsIgnoredBySvg() {
+        Response response = resources.target("/isoforms/svg/1isoWithDeletion")
+                .queryParam("format", "compact")
+                .request().get();
+        assertEquals(200, response.getStatus());
+        assertTrue(response.readEntity(String.class).startsWith("<svg"));
+    }
+
+    @Test
+    public void svgHasValidators() {
+        Response response = resources.target("/isoforms/svg/1isoWithDeletion").request().get();
+        assertEquals(200, response.getStatus());
+        assertNotNull(response.getEntityTag());
+        assertFalse(response.getEntityTag().isWeak());
+        assertNotNull(response.getLastModified());
+        assertTrue(response.readEntity(String.class).startsWith("<svg"));
+    }
+
+    @Test
+    public void cachedSvgIsSameAsRendered() {
+        String rendered = resources.target("/isoforms/svg/smallerMismatch/EFG").request().get(String.class);
+        String cached = resources.target("/isoforms/svg/smallerMismatch/EFG").request().get(String.class);
+        assertEquals(rendered, cached);
+        assertTrue(rendered.endsWith("</svg>"));
+    }
+
+    @Test
+    public void svgNotModified() {
+        Response first = resources.target("/isoforms/svg/1isoWithDeletion").request().get();
+        EntityTag etag = first.getEntityTag();
+
+        Response second = resources.target("/isoforms/svg/1isoWithDeletion").request()
+                .header(HttpHeaders.IF_NONE_MATCH, etag.toString())
+                .get();
+        assertEquals(304, second.getStatus());
+        assertFalse(second.hasEntity());
+    }
+
+    @Test
+    public void svgWithSequenceHasOwnETag() {
+        Response plain = resources.target("/isoforms/svg/1isoWithDeletion").request().get();
+        Response withSequence = resources.target("/isoforms/svg/1isoWithDeletion/EFG")
+                .queryParam("color", "FF0000")
+                .request().get();
+        assertEquals(200, withSequence.getStatus());
+        assertNotEquals(plain.getEntityTag(), withSequence.getEntityTag());
+
+        Response otherColor = resources.target("/isoforms/svg/1isoWithDeletion/EFG")
+                .queryParam("color", "00FF00")
+                .request()
+                .header(HttpHeaders.IF_NONE_MATCH, withSequence.getEntityTag().toString())
+                .get();
+        assertEquals(200, otherColor.getStatus());
+    }
+
+    @Test
+    public void batchStreamsOneLinePerEntry() throws Exception {
+        Response response = resources.target("/isoforms/batch").request()
+                .post(Entity.text("test2sameSubs\n1isoWithDeletion,missing"));
+        assertEquals(200, response.getStatus());
+        Map<String, JsonNode> lines = new HashMap<>();
+        for (String line : response.readEntity(String.class).split("\n")) {
+            JsonNode node = MAPPER.readTree(line);
+            lines.put(node.get("id").asText(), node);
+        }
+        assertEquals(3, lines.size());
+        assertEquals(3, lines.get("test2sameSubs").get("isoforms").size());
+        assertEquals(2, lines.get("1isoWithDeletion").get("isoforms").size());
+        assertNull(lines.get("missing").get("isoforms"));
+        assertNotNull(lines.get("missing").get("error"));
+    }
+
+    @Test
+    public void batchWithQueryParameter() throws Exception {
+        Response response = resources.target("/isoforms/batch").queryParam("ids", "test2sameSubs").request().get();
+        assertEquals(200, response.getStatus());
+        String[] lines = response.readEntity(String.class).split("\n");
+        assertEquals(1, lines.length);
+        assertEquals("test2sameSubs", MAPPER.readTree(lines[0]).get("id").asText());
+    }
+}
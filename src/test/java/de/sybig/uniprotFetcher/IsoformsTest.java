@@ -1,11 +1,21 @@
 package de.sybig.uniprotFetcher;
 
+import com.codahale.metrics.MetricRegistry;
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.List;
+import javax.ws.rs.WebApplicationException;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import static org.junit.Assert.*;
 
 /**
@@ -14,6 +24,10 @@ import static org.junit.Assert.*;
  */
 public class IsoformsTest {
 
+    @Rule
+    public TemporaryFolder dataDir = new TemporaryFolder();
+
+    private UniProtConfiguration config;
     private Isoforms instance;
 
     public IsoformsTest() {
@@ -28,9 +42,11 @@ public class IsoformsTest {
     }
 
     @Before
-    public void setUp() {
-        UniProtConfiguration config = new UniProtConfiguration();
+    public void setUp() throws Exception {
+        config = new UniProtConfiguration();
         config.setDataDir("testData");
+        // nothing listens there, entries not in testData fail fast
+        config.setUniprotUrl("http://localhost:1/");
         instance = new Isoforms(config);
     }
 
@@ -101,4 +117,81 @@ public class IsoformsTest {
         assertEquals("mismatch", iso2.getFeatures().get(1).getType());
                 assertEquals("gapD", iso2.getFeatures().get(2).getType());
     }
+
+    @Test
+    public void isoformsAreCached() throws Exception {
+        List<Isoform> first = instance.getIsoforms("1isoWithDeletion");
+        List<Isoform> second = instance.getIsoforms("1isoWithDeletion");
+        assertSame(first, second);
+        assertEquals(2, second.size());
+    }
+
+    @Test
+    public void alignmentsAreCached() throws Exception {
+        List<AlignedSequence> first = instance.getAlignmentPos("1isoWithDeletion");
+        List<AlignedSequence> second = instance.getAlignmentPos("1isoWithDeletion");
+        assertSame(first, second);
+    }
+
+    @Test
+    public void phasesAreMeasured() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        Isoforms measured = new Isoforms(config, new RdfStore(config, metrics), new QualityIndex(), metrics);
+        measured.getAlignmentPos("1isoWithDeletion");
+        measured.getAlignmentPos("1isoWithDeletion");
+
+        assertEquals(1, metrics.timer("de.sybig.uniprotFetcher.Isoforms.parse").getCount());
+        assertEquals(1, metrics.timer("de.sybig.uniprotFetcher.Isoforms.align").getCount());
+        assertEquals(0, metrics.counter("de.sybig.uniprotFetcher.Isoforms.replacedBy").getCount());
+        // both requests look up the file for the cache key, the parsing once more
+        assertEquals(3, metrics.timer("de.sybig.uniprotFetcher.RdfStore.local").getCount());
+    }
+
+    @Test
+    public void fetchedEntryIsParsedOnce() throws Exception {
+        byte[] rdf = Files.readAllBytes(Paths.get("testData", "1isoWithDeletion.rdf"));
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/uniprot/", exchange -> {
+            exchange.sendResponseHeaders(200, rdf.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(rdf);
+            }
+        });
+        server.start();
+        UniProtConfiguration fetching = new UniProtConfiguration();
+        fetching.setDataDir(dataDir.getRoot().getPath());
+        fetching.setUniprotUrl("http://localhost:" + server.getAddress().getPort() + "/uniprot/");
+        MetricRegistry metrics = new MetricRegistry();
+        RdfStore store = new RdfStore(fetching, metrics);
+        try {
+            Isoforms measured = new Isoforms(fetching, store, new QualityIndex(), metrics);
+            assertEquals(2, measured.getAlignmentPos("1isoWithDeletion").size());
+            assertEquals(1, metrics.timer("de.sybig.uniprotFetcher.RdfStore.fetch").getCount());
+            assertEquals(1, metrics.timer("de.sybig.uniprotFetcher.Isoforms.parse").getCount());
+        } finally {
+            store.stop();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void replacementCycleIsBadGateway() throws Exception {
+        Files.write(dataDir.getRoot().toPath().resolve("F00001.rdf"),
+                RdfFixture.createObsoleteEntry("F00001", "F00002").getBytes(StandardCharsets.UTF_8));
+        Files.write(dataDir.getRoot().toPath().resolve("F00002.rdf"),
+                RdfFixture.createObsoleteEntry("F00002", "F00001").getBytes(StandardCharsets.UTF_8));
+        config.setDataDir(dataDir.getRoot().getPath());
+        Isoforms cyclic = new Isoforms(config);
+        try {
+            cyclic.getIsoforms("F00001");
+            fail("Expected an exception for the cycle of replacements");
+        } catch (WebApplicationException ex) {
+            assertEquals(502, ex.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    public void selectBestSkipsMissingEntries() throws Exception {
+        assertEquals("smallerMismatch", instance.selectBest("notThere,smallerMismatch,1isoWithDeletion"));
+    }
 }
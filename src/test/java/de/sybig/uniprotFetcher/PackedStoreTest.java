@@ -0,0 +1,133 @@
+package de.sybig.uniprotFetcher;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class PackedStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void filesAreReadAfterReopening() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        try (PackedStore store = new PackedStore(dir, 1024 * 1024)) {
+            store.put("P1.rdf", bytes("first"), FileTime.fromMillis(1000));
+            store.put("P2.rdf", bytes("second"), FileTime.fromMillis(2000));
+            store.put("P1.rdf", bytes("first, again"), FileTime.fromMillis(3000));
+            assertEquals("first, again", read(store, "P1.rdf"));
+        }
+        try (PackedStore store = new PackedStore(dir, 1024 * 1024)) {
+            assertEquals(2, store.fileCount());
+            assertEquals("first, again", read(store, "P1.rdf"));
+            assertEquals("second", read(store, "P2.rdf"));
+            assertEquals(FileTime.fromMillis(3000), store.getLastModified("P1.rdf"));
+            assertNull(store.open("P3.rdf"));
+            assertNull(store.getLastModified("P3.rdf"));
+        }
+    }
+
+    @Test
+    public void appendedFilesAreReadBehindMapping() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        try (PackedStore store = new PackedStore(dir, 1024 * 1024)) {
+            for (int i = 0; i < 50; i++) {
+                store.put("P" + i + ".rdf", bytes("content of entry " + i), FileTime.fromMillis(i));
+                // every read is behind the mapping made by the first one
+                assertEquals("content of entry " + i, read(store, "P" + i + ".rdf"));
+                assertEquals("content of entry 0", read(store, "P0.rdf"));
+            }
+        }
+    }
+
+    @Test
+    public void newSegmentIsStartedWhenFull() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        try (PackedStore store = new PackedStore(dir, 100)) {
+            for (int i = 0; i < 10; i++) {
+                store.put("P" + i + ".rdf", bytes("content of entry " + i), FileTime.fromMillis(i));
+            }
+            for (int i = 0; i < 10; i++) {
+                assertEquals("content of entry " + i, read(store, "P" + i + ".rdf"));
+            }
+        }
+        assertTrue(segments(dir) > 1);
+    }
+
+    @Test
+    public void compactionRemovesReplacedFiles() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        try (PackedStore store = new PackedStore(dir, 100)) {
+            for (int i = 0; i < 10; i++) {
+                store.put("P1.rdf", bytes("version " + i), FileTime.fromMillis(i));
+            }
+            store.put("P2.rdf", bytes("other"), FileTime.fromMillis(20));
+            long size = store.size();
+            assertTrue(store.compact() > 0);
+            assertTrue(store.size() < size);
+            assertEquals("version 9", read(store, "P1.rdf"));
+            assertEquals("other", read(store, "P2.rdf"));
+        }
+        assertEquals(1, segments(dir));
+        try (PackedStore store = new PackedStore(dir, 100)) {
+            assertEquals("version 9", read(store, "P1.rdf"));
+            assertEquals(FileTime.fromMillis(9), store.getLastModified("P1.rdf"));
+        }
+    }
+
+    @Test
+    public void incompleteRecordIsIgnored() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        try (PackedStore store = new PackedStore(dir, 1024 * 1024)) {
+            store.put("P1.rdf", bytes("complete"), FileTime.fromMillis(1000));
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.findFirst().get();
+        }
+        // the start of a record, as left by a crash while appending
+        ByteBuffer partial = ByteBuffer.allocate(12);
+        partial.putInt(PackedStore.RECORD_MAGIC).putLong(2000);
+        Files.write(segment, partial.array(), StandardOpenOption.APPEND);
+
+        try (PackedStore store = new PackedStore(dir, 1024 * 1024)) {
+            assertEquals("complete", read(store, "P1.rdf"));
+            store.put("P2.rdf", bytes("appended"), FileTime.fromMillis(3000));
+        }
+        try (PackedStore store = new PackedStore(dir, 1024 * 1024)) {
+            assertEquals("complete", read(store, "P1.rdf"));
+            assertEquals("appended", read(store, "P2.rdf"));
+        }
+    }
+
+    private static ByteBuffer bytes(String content) {
+        return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(PackedStore store, String key) throws Exception {
+        try (InputStream in = store.open(key)) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static long segments(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".pack")).count();
+        }
+    }
+}
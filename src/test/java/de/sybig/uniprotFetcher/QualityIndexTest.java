@@ -0,0 +1,90 @@
+package de.sybig.uniprotFetcher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class QualityIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void indexIsPersisted() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("data.quality");
+        QualityIndex index = new QualityIndex(file);
+        index.put(entry("P1", true, "http://purl.uniprot.org/core/Evidence_at_Transcript_Level_Existence", null));
+        index.put(entry("P2", false, null, null));
+        index.put(entry("P1", true, "http://purl.uniprot.org/core/Evidence_at_Protein_Level_Existence", null));
+        index.stop();
+        assertEquals(3, Files.readAllLines(file).size());
+
+        QualityIndex reloaded = new QualityIndex(file);
+        assertEquals(2, reloaded.size());
+        UniProtQuality p1 = reloaded.get("P1");
+        assertTrue(p1.isReviewed());
+        assertEquals(1, p1.getLevel());
+        assertFalse(reloaded.get("P2").isReviewed());
+        assertNull(reloaded.get("P3"));
+        // the old line of P1 was removed when reading the file
+        assertEquals(2, Files.readAllLines(file).size());
+    }
+
+    @Test
+    public void concurrentUpdatesKeepFileInOrder() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("data.quality");
+        QualityIndex index = new QualityIndex(file);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> updates = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            boolean reviewed = i % 2 == 0;
+            updates.add(executor.submit(() -> {
+                for (int j = 0; j < 500; j++) {
+                    index.put(entry("P1", reviewed, null, null));
+                }
+            }));
+        }
+        for (Future<?> update : updates) {
+            update.get();
+        }
+        executor.shutdown();
+        boolean last = index.get("P1").isReviewed();
+        index.stop();
+
+        assertEquals(last, new QualityIndex(file).get("P1").isReviewed());
+    }
+
+    @Test
+    public void replacedEntriesUseQualityOfReplacement() {
+        QualityIndex index = new QualityIndex();
+        index.put(entry("OLD", false, null, "NEW"));
+        assertNull(index.get("OLD"));
+
+        index.put(entry("NEW", true, "http://purl.uniprot.org/core/Predicted_Existence", null));
+        UniProtQuality quality = index.get("OLD");
+        assertEquals("OLD", quality.getId());
+        assertTrue(quality.isReviewed());
+        assertEquals(4, quality.getLevel());
+    }
+
+    private UniProtEntry entry(String id, boolean reviewed, String existence, String replacedBy) {
+        UniProtEntry entry = new UniProtEntry();
+        entry.setId(id);
+        entry.setReviewed(reviewed);
+        entry.setExistence(existence);
+        entry.setReplacedBy(replacedBy);
+        return entry;
+    }
+}
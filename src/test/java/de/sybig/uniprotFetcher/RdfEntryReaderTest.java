@@ -0,0 +1,43 @@
+package de.sybig.uniprotFetcher;
+
+import java.nio.file.Paths;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class RdfEntryReaderTest {
+
+    @Test
+    public void readIsoformsAndModifications() throws Exception {
+        UniProtEntry entry = new RdfEntryReader().read(Paths.get("testData", "test2sameSubs.rdf"));
+
+        Isoform canonical = entry.getCanonicalSequence();
+        assertEquals("Test-1", canonical.getId());
+        assertEquals("ABCDEFGHIJKLMNOPQRSTUVWXYZ", canonical.getSequence());
+        assertNull(canonical.getModifications());
+        assertEquals(2, entry.getModifiedSequences().size());
+
+        Isoform iso2 = entry.getModifiedSequences().get(0);
+        assertEquals("Test-2", iso2.getId());
+        assertEquals("Test-1", iso2.getBasedOn());
+        assertEquals("iso 1", iso2.getNames().get(0));
+        assertEquals(1, iso2.getModifications().size());
+        Modification modification = iso2.getModifications().get(0);
+        assertEquals("VSP_000001", modification.getId());
+        assertEquals("12345", modification.getSubstitution());
+        assertEquals(5, modification.getBegin());
+        assertEquals(5, modification.getEnd());
+    }
+
+    @Test
+    public void readQuality() throws Exception {
+        UniProtEntry entry = new RdfEntryReader().read(Paths.get("testData", "test2sameSubs.rdf"));
+        assertTrue(entry.isReviewed());
+        assertFalse(entry.isObsolete());
+        assertNull(entry.getExistence());
+        assertNull(entry.getReplacedBy());
+    }
+}
@@ -0,0 +1,243 @@
+package de.sybig.uniprotFetcher;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates UniProt RDF entries of a given size, in the layout of the files
+ * and dumps of UniProt. The canonical isoform has random residues, each other
+ * isoform is based on it and has one to three of the alternative sequences of
+ * the entry: deletions, substitutions of the same length and insertions.
+ * Obsolete entries only point to the entry replacing them.
+ *
+ * The same arguments give the same entry.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class RdfFixture {
+
+    static final String HEADER = "<rdf:RDF xml:base=\"http://purl.uniprot.org/uniprot/\""
+            + " xmlns=\"http://purl.uniprot.org/core/\""
+            + " xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\""
+            + " xmlns:rdfs=\"http://www.w3.org/2000/01/rdf-schema#\""
+            + " xmlns:faldo=\"http://biohackathon.org/resource/faldo#\">\n";
+    private static final String RESIDUES = "ACDEFGHIKLMNPQRSTVWY";
+    private static final String UNIPROT = "http://purl.uniprot.org/uniprot/";
+    private static final String CORE = "http://purl.uniprot.org/core/";
+    private static final String FALDO = "http://biohackathon.org/resource/faldo#";
+    private static final String ISOFORMS = "http://purl.uniprot.org/isoforms/";
+    private static final String ANNOTATION = "http://purl.uniprot.org/annotation/";
+    private static final String RANGE = "http://purl.uniprot.org/range/";
+    private static final String POSITION = "http://purl.uniprot.org/position/";
+
+    private RdfFixture() {
+    }
+
+    /**
+     * Creates the RDF document of an entry.
+     *
+     * @param accession The accession of the entry.
+     * @param isoforms The number of isoforms, including the canonical one.
+     * @param length The length of the canonical sequence, at least 20.
+     * @param seed The seed of the random residues and modifications.
+     * @return The document.
+     */
+    public static String createEntry(String accession, int isoforms, int length, long seed) {
+        StringBuilder rdf = new StringBuilder(length * isoforms * 2 + 4096);
+        rdf.append("<?xml version='1.0' encoding='UTF-8'?>\n").append(HEADER);
+        appendDescriptions(rdf, accession, isoforms, length, seed);
+        rdf.append("</rdf:RDF>\n");
+        return rdf.toString();
+    }
+
+    /**
+     * Creates the RDF document of an obsolete entry.
+     *
+     * @param accession The accession of the entry.
+     * @param replacedBy The accession of the entry replacing it, which may be
+     * obsolete itself.
+     * @return The document.
+     */
+    public static String createObsoleteEntry(String accession, String replacedBy) {
+        StringBuilder rdf = new StringBuilder();
+        rdf.append("<?xml version='1.0' encoding='UTF-8'?>\n").append(HEADER);
+        rdf.append("    <rdf:Description rdf:about=\"").append(UNIPROT).append(accession).append("\">\n");
+        appendResource(rdf, "rdf:type", CORE + "Protein");
+        rdf.append("        <reviewed rdf:datatype=\"http://www.w3.org/2001/XMLSchema#boolean\">false</reviewed>\n");
+        rdf.append("        <obsolete rdf:datatype=\"http://www.w3.org/2001/XMLSchema#boolean\">true</obsolete>\n");
+        appendResource(rdf, "replacedBy", UNIPROT + replacedBy);
+        rdf.append("    </rdf:Description>\n");
+        rdf.append("</rdf:RDF>\n");
+        return rdf.toString();
+    }
+
+    /**
+     * Gets the canonical sequence of a generated entry.
+     *
+     * @param length The length of the canonical sequence.
+     * @param seed The seed the entry was created with.
+     * @return The sequence.
+     */
+    public static String getCanonicalSequence(int length, long seed) {
+        return createResidues(new Random(seed), length);
+    }
+
+    /**
+     * Creates a dump with several entries in one document, like the dumps of
+     * UniProt.
+     *
+     * @param entries The number of entries, with the accessions
+     * <code>F00001</code>, <code>F00002</code> and so on.
+     * @param isoforms The number of isoforms of each entry.
+     * @param length The length of the canonical sequences.
+     * @param seed The seed of the random residues and modifications.
+     * @return The dump.
+     */
+    public static String createDump(int entries, int isoforms, int length, long seed) {
+        StringBuilder rdf = new StringBuilder();
+        rdf.append("<?xml version='1.0' encoding='UTF-8'?>\n").append(HEADER);
+        for (int i = 1; i <= entries; i++) {
+            appendDescriptions(rdf, getAccession(i), isoforms, length, seed + i);
+        }
+        rdf.append("</rdf:RDF>\n");
+        return rdf.toString();
+    }
+
+    /**
+     * The accession of the entry with the number in a generated dump.
+     *
+     * @param number The number of the entry, starting with 1.
+     * @return The accession.
+     */
+    public static String getAccession(int number) {
+        return String.format("F%05d", number);
+    }
+
+    private static void appendDescriptions(StringBuilder rdf, String accession, int isoforms, int length, long seed) {
+        Random random = new Random(seed);
+        String canonical = createResidues(random, length);
+        // about one alternative sequence per isoform, shared between the isoforms
+        List<Modification> modifications = new ArrayList<>();
+        for (int i = 1; i < Math.max(isoforms, 2); i++) {
+            modifications.add(createModification(random, String.format("VSP_%s_%d", accession, i), length));
+        }
+
+        rdf.append("    <rdf:Description rdf:about=\"").append(UNIPROT).append(accession).append("\">\n");
+        appendResource(rdf, "rdf:type", CORE + "Protein");
+        rdf.append("        <reviewed rdf:datatype=\"http://www.w3.org/2001/XMLSchema#boolean\">true</reviewed>\n");
+        rdf.append("        <mnemonic>").append(accession).append("_HUMAN</mnemonic>\n");
+        for (int i = 1; i <= isoforms; i++) {
+            appendResource(rdf, "sequence", ISOFORMS + accession + "-" + i);
+        }
+        rdf.append("    </rdf:Description>\n");
+
+        String canonicalId = accession + "-1";
+        rdf.append("    <rdf:Description rdf:about=\"").append(ISOFORMS).append(canonicalId).append("\">\n");
+        appendResource(rdf, "rdf:type", CORE + "Simple_Sequence");
+        rdf.append("        <name>1</name>\n");
+        rdf.append("        <rdf:value>").append(canonical).append("</rdf:value>\n");
+        rdf.append("    </rdf:Description>\n");
+
+        for (int i = 2; i <= isoforms; i++) {
+            List<Modification> own = new ArrayList<>();
+            for (int tries = 1 + random.nextInt(3); tries > 0; tries--) {
+                Modification modification = modifications.get(random.nextInt(modifications.size()));
+                if (!overlaps(own, modification)) {
+                    own.add(modification);
+                }
+            }
+            own.sort(Comparator.comparingInt(Modification::getBegin));
+            rdf.append("    <rdf:Description rdf:about=\"").append(ISOFORMS).append(accession).append('-').append(i).append("\">\n");
+            appendResource(rdf, "rdf:type", CORE + "Modified_Sequence");
+            rdf.append("        <name>").append(i).append("</name>\n");
+            appendResource(rdf, "basedOn", ISOFORMS + canonicalId);
+            rdf.append("        <rdf:value>").append(apply(canonical, own)).append("</rdf:value>\n");
+            for (Modification modification : own) {
+                appendResource(rdf, "modification", ANNOTATION + modification.getId());
+            }
+            rdf.append("    </rdf:Description>\n");
+        }
+
+        for (Modification modification : modifications) {
+            String range = modification.getId() + "tt" + modification.getBegin() + "tt" + modification.getEnd();
+            rdf.append("    <rdf:Description rdf:about=\"").append(ANNOTATION).append(modification.getId()).append("\">\n");
+            appendResource(rdf, "rdf:type", CORE + "Alternative_Sequence_Annotation");
+            rdf.append("        <substitution>").append(modification.getSubstitution()).append("</substitution>\n");
+            appendResource(rdf, "range", RANGE + range);
+            rdf.append("    </rdf:Description>\n");
+            rdf.append("    <rdf:Description rdf:about=\"").append(RANGE).append(range).append("\">\n");
+            appendResource(rdf, "rdf:type", FALDO + "Region");
+            appendResource(rdf, "faldo:begin", POSITION + range + "b");
+            appendResource(rdf, "faldo:end", POSITION + range + "e");
+            rdf.append("    </rdf:Description>\n");
+            appendPosition(rdf, range + "b", modification.getBegin(), canonicalId);
+            appendPosition(rdf, range + "e", modification.getEnd(), canonicalId);
+        }
+    }
+
+    private static String createResidues(Random random, int length) {
+        char[] residues = new char[length];
+        for (int i = 0; i < length; i++) {
+            residues[i] = RESIDUES.charAt(random.nextInt(RESIDUES.length()));
+        }
+        return new String(residues);
+    }
+
+    private static Modification createModification(Random random, String id, int length) {
+        Modification modification = new Modification();
+        modification.setId(id);
+        int span = 1 + random.nextInt(Math.max(length / 20, 1));
+        modification.setBegin(1 + random.nextInt(length - span));
+        modification.setEnd(modification.getBegin() + span - 1);
+        int substitution;
+        switch (random.nextInt(3)) {
+            case 0:
+                substitution = 0;
+                break;
+            case 1:
+                substitution = span;
+                break;
+            default:
+                substitution = span + 1 + random.nextInt(span * 2);
+        }
+        StringBuilder residues = new StringBuilder(substitution);
+        for (int i = 0; i < substitution; i++) {
+            residues.append(RESIDUES.charAt(random.nextInt(RESIDUES.length())));
+        }
+        modification.setSubstitution(residues.toString());
+        return modification;
+    }
+
+    private static boolean overlaps(List<Modification> modifications, Modification modification) {
+        for (Modification other : modifications) {
+            if (other.getBegin() <= modification.getEnd() && modification.getBegin() <= other.getEnd()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String apply(String sequence, List<Modification> modifications) {
+        StringBuilder modified = new StringBuilder(sequence);
+        for (int i = modifications.size() - 1; i >= 0; i--) {
+            Modification modification = modifications.get(i);
+            modified.replace(modification.getBegin() - 1, modification.getEnd(), modification.getSubstitution());
+        }
+        return modified.toString();
+    }
+
+    private static void appendResource(StringBuilder rdf, String property, String resource) {
+        rdf.append("        <").append(property).append(" rdf:resource=\"").append(resource).append("\"/>\n");
+    }
+
+    private static void appendPosition(StringBuilder rdf, String id, int position, String reference) {
+        rdf.append("    <rdf:Description rdf:about=\"").append(POSITION).append(id).append("\">\n");
+        appendResource(rdf, "rdf:type", FALDO + "ExactPosition");
+        rdf.append("        <faldo:position rdf:datatype=\"http://www.w3.org/2001/XMLSchema#int\">")
+                .append(position).append("</faldo:position>\n");
+        appendResource(rdf, "faldo:reference", ISOFORMS + reference);
+        rdf.append("    </rdf:Description>\n");
+    }
+}
@@ -0,0 +1,77 @@
+package de.sybig.uniprotFetcher;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class RdfFixtureTest {
+
+    @Test
+    public void entryIsRead() throws Exception {
+        UniProtEntry entry = read(RdfFixture.createEntry("F00001", 10, 300, 1));
+        assertTrue(entry.isReviewed());
+        assertEquals("F00001-1", entry.getCanonicalSequence().getId());
+        assertEquals(300, entry.getCanonicalSequence().getSequence().length());
+        assertEquals(9, entry.getModifiedSequences().size());
+        for (Isoform isoform : entry.getModifiedSequences()) {
+            assertEquals("F00001-1", isoform.getBasedOn());
+            int length = entry.getCanonicalSequence().getSequence().length();
+            for (Modification modification : isoform.getModifications()) {
+                assertTrue(modification.getBegin() > 0);
+                assertNotNull(modification.getSubstitution());
+                length += modification.getSubstitution().length() - (modification.getEnd() - modification.getBegin() + 1);
+            }
+            assertEquals(length, isoform.getSequence().length());
+        }
+    }
+
+    @Test
+    public void obsoleteEntryIsReplaced() throws Exception {
+        UniProtEntry entry = read(RdfFixture.createObsoleteEntry("O00001", "F00001"));
+        assertTrue(entry.isObsolete());
+        assertFalse(entry.isReviewed());
+        assertEquals("F00001", entry.getReplacedBy());
+    }
+
+    @Test
+    public void canonicalSequenceIsKnown() throws Exception {
+        UniProtEntry entry = read(RdfFixture.createEntry("F00001", 2, 300, 5));
+        assertEquals(RdfFixture.getCanonicalSequence(300, 5), entry.getCanonicalSequence().getSequence());
+    }
+
+    @Test
+    public void entriesCanBeAligned() throws Exception {
+        for (long seed = 0; seed < 10; seed++) {
+            UniProtEntry entry = read(RdfFixture.createEntry("F00001", 10, 300, seed));
+            List<Isoform> isoforms = new ArrayList<>();
+            isoforms.add(entry.getCanonicalSequence());
+            isoforms.addAll(entry.getModifiedSequences());
+            assertEquals(10, Aligner.alignSerially(isoforms).size());
+        }
+    }
+
+    @Test
+    public void dumpIsSplitIntoEntries() throws Exception {
+        String dump = RdfFixture.createDump(3, 2, 100, 1);
+        DumpSplitter splitter = new DumpSplitter(new BufferedReader(new StringReader(dump)));
+        for (int i = 1; i <= 3; i++) {
+            DumpSplitter.Record record = splitter.next();
+            assertEquals(RdfFixture.getAccession(i), record.getId());
+            assertEquals(1, read(record.getContent()).getModifiedSequences().size());
+        }
+        assertNull(splitter.next());
+    }
+
+    private static UniProtEntry read(String rdf) throws Exception {
+        return new RdfEntryReader().read(new ByteArrayInputStream(rdf.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,299 @@
+package de.sybig.uniprotFetcher;
+
+import com.codahale.metrics.MetricRegistry;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests fetching the RDF files from a local stand-in for uniprot.org.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class RdfStoreTest {
+
+    @Rule
+    public TemporaryFolder dataDir = new TemporaryFolder();
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private byte[] rdf;
+    private RdfStore store;
+    private final MetricRegistry metrics = new MetricRegistry();
+
+    @Before
+    public void setUp() throws IOException {
+        rdf = Files.readAllBytes(Paths.get("testData", "1isoWithDeletion.rdf"));
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/uniprot/", exchange -> {
+            requests.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            if (exchange.getRequestURI().getPath().endsWith("/missing.rdf")) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, rdf.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                // send the file in two parts, so a reader would see a partial file
+                out.write(rdf, 0, rdf.length / 2);
+                out.flush();
+                out.write(rdf, rdf.length / 2, rdf.length - rdf.length / 2);
+            }
+        });
+        server.start();
+
+        UniProtConfiguration config = new UniProtConfiguration();
+        config.setDataDir(dataDir.getRoot().getPath());
+        config.setUniprotUrl("http://localhost:" + server.getAddress().getPort() + "/uniprot/");
+        store = new RdfStore(config, metrics);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.stop();
+        server.stop(0);
+    }
+
+    @Test
+    public void concurrentRequestsShareOneDownload() throws Exception {
+        AtomicInteger fetched = new AtomicInteger();
+        store.addFetchListener(id -> fetched.incrementAndGet());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Path>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> store.getRDFfile("P12345")));
+        }
+        // wait until the first request reached the server, the others are waiting for it
+        while (requests.get() == 0) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        release.countDown();
+        for (Future<Path> result : results) {
+            assertEquals(store.getLocalFile("P12345"), result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals(1, requests.get());
+        assertEquals(1, fetched.get());
+        assertArrayEquals(rdf, Files.readAllBytes(store.getLocalFile("P12345")));
+        assertNoTempFiles();
+    }
+
+    @Test
+    public void failedDownloadLeavesNoFile() throws Exception {
+        release.countDown();
+        try {
+            store.getRDFfile("missing");
+            fail("Expected an IOException for a missing entry");
+        } catch (IOException ex) {
+            // expected
+        }
+        assertFalse(Files.exists(store.getLocalFile("missing")));
+        assertNoTempFiles();
+    }
+
+    @Test
+    public void oldFileIsServedAndRefreshedInBackground() throws Exception {
+        CountDownLatch fetched = new CountDownLatch(1);
+        store.addFetchListener(id -> fetched.countDown());
+        Path oldFile = store.getLocalFile("P12345");
+        Files.write(oldFile, "old".getBytes());
+        Files.setLastModifiedTime(oldFile, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(100)));
+
+        // the stub server blocks until released, so the old file must be returned without waiting
+        assertEquals(oldFile, store.getRDFfile("P12345"));
+        assertEquals("old", new String(Files.readAllBytes(oldFile)));
+
+        release.countDown();
+        assertTrue(fetched.await(10, TimeUnit.SECONDS));
+        assertArrayEquals(rdf, Files.readAllBytes(oldFile));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void refreshIfOldFetchesNoMissingFile() throws Exception {
+        CountDownLatch fetched = new CountDownLatch(1);
+        store.addFetchListener(id -> fetched.countDown());
+        Path oldFile = store.getLocalFile("P12345");
+        Files.write(oldFile, "old".getBytes());
+        Files.setLastModifiedTime(oldFile, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(100)));
+        release.countDown();
+
+        store.refreshIfOld("Q99999");
+        store.refreshIfOld("P12345");
+        assertTrue(fetched.await(10, TimeUnit.SECONDS));
+        assertArrayEquals(rdf, Files.readAllBytes(oldFile));
+        assertEquals(1, requests.get());
+        assertFalse(Files.exists(store.getLocalFile("Q99999")));
+    }
+
+    @Test
+    public void failedRefreshIsNotRepeatedAtOnce() throws Exception {
+        Path oldFile = store.getLocalFile("missing");
+        Files.write(oldFile, "old".getBytes());
+        Files.setLastModifiedTime(oldFile, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(100)));
+        release.countDown();
+
+        assertEquals(oldFile, store.getRDFfile("missing"));
+        while (metrics.counter("de.sybig.uniprotFetcher.RdfStore.fetchErrors").getCount() == 0) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(oldFile, store.getRDFfile("missing"));
+        Thread.sleep(200);
+
+        assertEquals(1, requests.get());
+        assertEquals("old", new String(Files.readAllBytes(oldFile)));
+    }
+
+    @Test
+    public void fetchesAreMeasured() throws Exception {
+        release.countDown();
+        store.getRDFfile("P12345");
+        store.getRDFfile("P12345");
+        try {
+            store.getRDFfile("missing");
+            fail("Expected an IOException for a missing entry");
+        } catch (IOException ex) {
+            // expected
+        }
+
+        assertEquals(2, metrics.timer("de.sybig.uniprotFetcher.RdfStore.fetch").getCount());
+        assertEquals(1, metrics.timer("de.sybig.uniprotFetcher.RdfStore.local").getCount());
+        assertEquals(1, metrics.counter("de.sybig.uniprotFetcher.RdfStore.fetchErrors").getCount());
+        assertEquals(1, metrics.histogram("de.sybig.uniprotFetcher.RdfStore.entrySize").getCount());
+        assertEquals(rdf.length, metrics.histogram("de.sybig.uniprotFetcher.RdfStore.entrySize").getSnapshot().getMax());
+    }
+
+    @Test
+    public void packedStoreKeepsDownloadInSegment() throws Exception {
+        UniProtConfiguration config = new UniProtConfiguration();
+        config.setDataDir(dataDir.getRoot().getPath());
+        config.setUniprotUrl("http://localhost:" + server.getAddress().getPort() + "/uniprot/");
+        config.setPacked(true);
+        RdfStore packed = new RdfStore(config);
+        release.countDown();
+        try {
+            assertNotNull(packed.getLastModified("P12345"));
+            try (InputStream in = packed.openRDF("P12345")) {
+                assertArrayEquals(rdf, IOUtils.toByteArray(in));
+            }
+            assertEquals(1, requests.get());
+            assertFalse(Files.exists(packed.getLocalFile("P12345")));
+            assertNoTempFiles();
+        } finally {
+            packed.stop();
+        }
+    }
+
+    @Test
+    public void failingListenerDoesNotFailFetch() throws Exception {
+        AtomicInteger called = new AtomicInteger();
+        store.addFetchListener(id -> {
+            throw new IllegalStateException("broken listener");
+        });
+        store.addFetchListener(id -> called.incrementAndGet());
+        release.countDown();
+
+        assertEquals(store.getLocalFile("P12345"), store.getRDFfile("P12345"));
+        assertEquals(1, called.get());
+        assertEquals(0, metrics.counter("de.sybig.uniprotFetcher.RdfStore.fetchErrors").getCount());
+    }
+
+    @Test
+    public void looseFileIsMovedIntoPack() throws Exception {
+        Path looseFile = store.getLocalFile("P12345");
+        Files.write(looseFile, rdf);
+        Files.write(store.getSnapshotFile("P12345"), "old".getBytes());
+        UniProtConfiguration config = new UniProtConfiguration();
+        config.setDataDir(dataDir.getRoot().getPath());
+        config.setUniprotUrl("http://localhost:" + server.getAddress().getPort() + "/uniprot/");
+        config.setPacked(true);
+        RdfStore packed = new RdfStore(config);
+        try {
+            assertNotNull(packed.getLastModified("P12345"));
+            try (InputStream in = packed.openRDF("P12345")) {
+                assertArrayEquals(rdf, IOUtils.toByteArray(in));
+            }
+            assertEquals(0, requests.get());
+            assertFalse(Files.exists(looseFile));
+            assertFalse(Files.exists(packed.getSnapshotFile("P12345")));
+        } finally {
+            packed.stop();
+        }
+    }
+
+    @Test
+    public void compressedFileIsDecompressedWhenRead() throws Exception {
+        Path plainFile = store.getLocalFile("P12345");
+        Files.write(plainFile, "old".getBytes());
+        Files.setLastModifiedTime(plainFile, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(100)));
+        UniProtConfiguration config = new UniProtConfiguration();
+        config.setDataDir(dataDir.getRoot().getPath());
+        config.setUniprotUrl("http://localhost:" + server.getAddress().getPort() + "/uniprot/");
+        config.setCompressionLevel(9);
+        RdfStore compressed = new RdfStore(config);
+        CountDownLatch fetched = new CountDownLatch(1);
+        compressed.addFetchListener(id -> fetched.countDown());
+        try {
+            // the plain copy is still used, and replaced by a compressed one
+            assertEquals(plainFile, compressed.getRDFfile("P12345"));
+            release.countDown();
+            assertTrue(fetched.await(10, TimeUnit.SECONDS));
+            Path compressedFile = compressed.getLocalFile("P12345");
+            assertTrue(compressedFile.toString().endsWith(".rdf.gz"));
+            assertFalse(Files.exists(plainFile));
+            assertTrue(Files.size(compressedFile) < rdf.length);
+            try (InputStream in = compressed.openRDF("P12345")) {
+                assertArrayEquals(rdf, IOUtils.toByteArray(in));
+            }
+            assertNoTempFiles();
+        } finally {
+            compressed.stop();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCompressionLevelIsRejected() throws Exception {
+        UniProtConfiguration config = new UniProtConfiguration();
+        config.setDataDir(dataDir.getRoot().getPath());
+        config.setCompressionLevel(10);
+        new RdfStore(config);
+    }
+
+    private void assertNoTempFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dataDir.getRoot().toPath())) {
+            assertEquals(0, files.filter(f -> f.toString().endsWith(".tmp")).count());
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package de.sybig.uniprotFetcher;
+
+import com.codahale.metrics.MetricRegistry;
+import com.sun.net.httpserver.HttpServer;
+import io.dropwizard.util.Duration;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the retries and the circuit breaker against a local stand-in for
+ * uniprot.org answering with a given list of status codes.
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class UpstreamClientTest {
+
+    private static final byte[] CONTENT = "<rdf:RDF/>".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private final Queue<Integer> statuses = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile String lastPath;
+    private final MetricRegistry metrics = new MetricRegistry();
+    private UpstreamClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/uniprot/", exchange -> {
+            requests.incrementAndGet();
+            lastPath = exchange.getRequestURI().getRawPath();
+            // the file is sent once the given statuses are used up
+            Integer status = statuses.poll();
+            if (status != null && status != 200) {
+                exchange.sendResponseHeaders(status, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, CONTENT.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(CONTENT);
+            }
+        });
+        server.start();
+
+        UniProtConfiguration config = new UniProtConfiguration();
+        config.setUniprotUrl("http://localhost:" + server.getAddress().getPort() + "/uniprot/");
+        config.setUpstreamRetries(2);
+        config.setUpstreamBackoff(Duration.milliseconds(1));
+        config.setUpstreamFailureThreshold(2);
+        config.setUpstreamOpenTime(Duration.milliseconds(300));
+        client = new UpstreamClient(config, metrics);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void serverErrorsAreRetried() throws Exception {
+        statuses.add(503);
+        statuses.add(500);
+        statuses.add(200);
+        assertArrayEquals(CONTENT, fetch("P12345.rdf"));
+        assertEquals(3, requests.get());
+        assertEquals(2, metrics.counter("de.sybig.uniprotFetcher.UpstreamClient.retries").getCount());
+    }
+
+    @Test
+    public void missingFileIsNotRetried() throws Exception {
+        statuses.add(404);
+        try {
+            fetch("missing.rdf");
+            fail("Expected a FileNotFoundException for a missing entry");
+        } catch (FileNotFoundException ex) {
+            // expected
+        }
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void breakerOpensAfterFailuresAndClosesAfterTrial() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            statuses.add(503);
+        }
+        for (int i = 0; i < 2; i++) {
+            try {
+                fetch("P12345.rdf");
+                fail("Expected an IOException after the retries");
+            } catch (IOException ex) {
+                // expected
+            }
+        }
+        assertEquals(6, requests.get());
+
+        // open, UniProt is not contacted
+        try {
+            fetch("P12345.rdf");
+            fail("Expected an IOException of the open breaker");
+        } catch (IOException ex) {
+            // expected
+        }
+        assertEquals(6, requests.get());
+        assertEquals(true, metrics.getGauges().get("de.sybig.uniprotFetcher.UpstreamClient.open").getValue());
+        assertEquals(1, metrics.counter("de.sybig.uniprotFetcher.UpstreamClient.rejected").getCount());
+
+        // after the open time the trial succeeds and closes the breaker
+        Thread.sleep(400);
+        assertArrayEquals(CONTENT, fetch("P12345.rdf"));
+        assertArrayEquals(CONTENT, fetch("P12345.rdf"));
+        assertEquals(8, requests.get());
+        assertEquals(false, metrics.getGauges().get("de.sybig.uniprotFetcher.UpstreamClient.open").getValue());
+    }
+
+    @Test
+    public void failedTrialOpensBreakerAgain() throws Exception {
+        for (int i = 0; i < 7; i++) {
+            statuses.add(503);
+        }
+        for (int i = 0; i < 2; i++) {
+            try {
+                fetch("P12345.rdf");
+            } catch (IOException ex) {
+                // expected
+            }
+        }
+        Thread.sleep(400);
+        try {
+            fetch("P12345.rdf");
+            fail("Expected an IOException of the failed trial");
+        } catch (IOException ex) {
+            // expected
+        }
+        // the trial is not retried once the breaker is open again
+        try {
+            fetch("P12345.rdf");
+            fail("Expected an IOException of the open breaker");
+        } catch (IOException ex) {
+            // expected
+        }
+        assertEquals(7, requests.get());
+    }
+
+    @Test
+    public void fileNameIsEscaped() throws Exception {
+        assertArrayEquals(CONTENT, fetch("P12 345.rdf"));
+        assertEquals("/uniprot/P12%20345.rdf", lastPath);
+    }
+
+    @Test
+    public void consumerFailureIsNoUpstreamFailure() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try {
+                client.fetch("P12345.rdf", in -> {
+                    throw new IOException("No space left on device");
+                });
+                fail("Expected the IOException of the consumer");
+            } catch (IOException ex) {
+                assertEquals("No space left on device", ex.getMessage());
+            }
+        }
+        assertEquals(3, requests.get());
+        assertEquals(0, metrics.counter("de.sybig.uniprotFetcher.UpstreamClient.retries").getCount());
+        assertEquals(false, metrics.getGauges().get("de.sybig.uniprotFetcher.UpstreamClient.open").getValue());
+    }
+
+    @Test
+    public void trialIsReleasedAfterRuntimeException() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            statuses.add(503);
+        }
+        for (int i = 0; i < 2; i++) {
+            try {
+                fetch("P12345.rdf");
+            } catch (IOException ex) {
+                // expected
+            }
+        }
+        Thread.sleep(400);
+        try {
+            client.fetch("P12345.rdf", in -> {
+                throw new IllegalStateException("broken consumer");
+            });
+            fail("Expected the exception of the consumer");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+        // the next request is the trial, not rejected by a stuck one
+        assertArrayEquals(CONTENT, fetch("P12345.rdf"));
+        assertEquals(false, metrics.getGauges().get("de.sybig.uniprotFetcher.UpstreamClient.open").getValue());
+    }
+
+    private byte[] fetch(String file) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        client.fetch(file, in -> IOUtils.copy(in, content));
+        return content.toByteArray();
+    }
+}
@@ -0,0 +1,40 @@
+package de.sybig.uniprotFetcher;
+
+import com.codahale.metrics.MetricRegistry;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author juergen.doenitz@bioinf.med.uni-goettingen.de
+ */
+public class WarmupTest {
+
+    @Test
+    public void parseIds() {
+        assertEquals(Arrays.asList("P1", "P2", "P3", "P4"),
+                Warmup.parseIds("# transcription factors\nP1\n\nP2,P3 \n  P4\n"));
+    }
+
+    @Test
+    public void warmupReportsProgress() throws Exception {
+        UniProtConfiguration config = new UniProtConfiguration();
+        config.setDataDir("testData");
+        // nothing listens there, so the missing entry fails fast
+        config.setUniprotUrl("http://localhost:1/");
+        MetricRegistry metrics = new MetricRegistry();
+        Warmup warmup = new Warmup(config, new Isoforms(config), metrics);
+
+        StringWriter output = new StringWriter();
+        int failed = warmup.run(Arrays.asList("1isoWithDeletion", "smallerMismatch", "notThere"), new PrintWriter(output));
+
+        assertEquals(1, failed);
+        assertEquals(3, output.toString().split("\n").length - 1);
+        assertTrue(output.toString().contains("Warmed up 3 entries"));
+        assertEquals(3, metrics.getGauges().get("de.sybig.uniprotFetcher.Warmup.done").getValue());
+        assertEquals(3, metrics.getTimers().get("de.sybig.uniprotFetcher.Warmup.entries").getCount());
+    }
+}